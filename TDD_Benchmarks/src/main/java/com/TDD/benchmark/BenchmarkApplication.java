@@ -0,0 +1,71 @@
+package com.TDD.benchmark;
+
+import com.TDD.Application;
+import com.TDD.model.Product;
+import com.TDD.repository.ProductRepository;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// starts the demo application for a benchmark, every start gets its own in-memory database
+public final class BenchmarkApplication {
+
+    // rows inserted per saveAll call when filling the table
+    private static final int FILL_CHUNK = 10_000;
+    private static final AtomicInteger DATABASE_COUNTER = new AtomicInteger();
+
+    private BenchmarkApplication() {
+    }
+
+    // start the application without a web server. with web set, a servlet context is created for MockMvc
+    // but still no port is opened. extra properties are given as key=value
+    public static ConfigurableApplicationContext start(boolean web, String... properties) {
+        return builder(web, properties).run();
+    }
+
+    // the application builder start uses, for benchmarks that need to customize the application further
+    public static SpringApplicationBuilder builder(boolean web, String... properties) {
+        String database = "bench" + DATABASE_COUNTER.incrementAndGet();
+        Map<String, Object> overrides = new LinkedHashMap<>();
+        overrides.put("server.port", "-1");
+        overrides.put("spring.h2.console.enabled", "false");
+        overrides.put("spring.datasource.url", "jdbc:h2:mem:" + database + ";LAZY_QUERY_EXECUTION=1");
+        for (String property : properties) {
+            int equals = property.indexOf('=');
+            overrides.put(property.substring(0, equals), property.substring(equals + 1));
+        }
+        return new SpringApplicationBuilder(Application.class)
+                .web(web ? WebApplicationType.SERVLET : WebApplicationType.NONE)
+                // defaults, only used where application.properties has no value
+                .properties(
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN")
+                // ahead of application.properties, which sets most of these too
+                .initializers(context -> context.getEnvironment().getPropertySources()
+                        .addFirst(new MapPropertySource("benchmark", overrides)));
+    }
+
+    // insert rows products, the ids of the new products run from 1 to rows
+    public static void fill(ProductRepository productRepository, int rows) {
+        for (int start = 0; start < rows; start += FILL_CHUNK) {
+            int end = Math.min(start + FILL_CHUNK, rows);
+            List<Product> products = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                products.add(product(i));
+            }
+            productRepository.saveAll(products);
+        }
+    }
+
+    // a product with a name and quantity that vary with the index
+    public static Product product(int index) {
+        return new Product("Product " + index, index % 1000, 1);
+    }
+}
@@ -0,0 +1,51 @@
+package com.TDD.benchmark;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+// wraps the application's data source so every statement waits as if the database were across a network.
+// the in-memory database answers in microseconds, which hides the cost of a thread blocked on jdbc
+public class DatabaseLatency implements BeanPostProcessor {
+
+    private final long latencyNanos;
+
+    // constructor
+    public DatabaseLatency(long latencyMillis) {
+        this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(latencyMillis);
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (latencyNanos == 0 || !(bean instanceof DataSource)) {
+            return bean;
+        }
+        return new DelegatingDataSource((DataSource) bean) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return delayStatements(super.getConnection());
+            }
+        };
+    }
+
+    private Connection delayStatements(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                (proxy, method, args) -> {
+                    // one round trip per statement
+                    if (method.getName().startsWith("prepare") || method.getName().equals("createStatement")) {
+                        TimeUnit.NANOSECONDS.sleep(latencyNanos);
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
@@ -0,0 +1,74 @@
+package com.TDD.benchmark;
+
+import com.TDD.repository.ProductRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+// the full request path through the dispatcher servlet, controller, service and repository with MockMvc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductControllerBenchmark {
+
+    @Param({"10000"})
+    private int tableSize;
+
+    // the application as it is configured to run, with or without the product cache
+    @Param({"true", "false"})
+    private boolean cacheEnabled;
+
+    private ConfigurableApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(true, "product.cache.enabled=" + cacheEnabled);
+        BenchmarkApplication.fill(context.getBean("productRepositoryImpl", ProductRepository.class), tableSize);
+        mockMvc = MockMvcBuilders.webAppContextSetup((WebApplicationContext) context).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult getProduct() throws Exception {
+        return mockMvc.perform(get("/product/{id}", randomId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getProductsPage() throws Exception {
+        return mockMvc.perform(get("/products").param("after", Long.toString(randomId())).param("limit", "100")).andReturn();
+    }
+
+    // the if-match is usually stale, so this measures a mix of successful updates and conflicts
+    @Benchmark
+    public MvcResult putProduct() throws Exception {
+        long id = randomId();
+        return mockMvc.perform(put("/product/{id}", id)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, 1)
+                .content("{\"name\":\"Product " + id + "\",\"quantity\":20}"))
+                .andReturn();
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, tableSize + 1);
+    }
+}
@@ -0,0 +1,76 @@
+package com.TDD.benchmark;
+
+import com.TDD.model.Product;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// encoding and decoding a product listing as json, smile and cbor, the cpu side of the bulk reads and writes.
+// the bytes on the wire are printed by ProductEncodingSize
+//   java -jar target/benchmarks.jar ProductEncodingBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProductEncodingBenchmark {
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"10000", "1000000"})
+    private int rows;
+
+    private ObjectWriter listWriter;
+    private ObjectReader listReader;
+    private List<Product> products;
+    private byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ObjectMapper objectMapper = mapper(format);
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Product.class));
+        listReader = objectMapper.readerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Product.class));
+        products = products(rows);
+        encoded = listWriter.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return listWriter.writeValueAsBytes(products);
+    }
+
+    @Benchmark
+    public List<Product> decode() throws IOException {
+        return listReader.readValue(encoded);
+    }
+
+    static ObjectMapper mapper(String format) {
+        switch (format) {
+            case "smile":
+                return new SmileMapper();
+            case "cbor":
+                return new CBORMapper();
+            default:
+                return new ObjectMapper();
+        }
+    }
+
+    // products like the ones the load test creates, names and quantities of realistic length
+    static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 1; i <= count; i++) {
+            products.add(new Product(i, "Product " + i, i % 1000, 1 + i % 5));
+        }
+        return products;
+    }
+}
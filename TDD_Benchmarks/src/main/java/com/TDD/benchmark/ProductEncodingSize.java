@@ -0,0 +1,37 @@
+package com.TDD.benchmark;
+
+import com.TDD.model.Product;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+// prints the bytes a product listing takes as json, smile and cbor, plain and gzipped. not a jmh benchmark,
+// the cpu cost is measured by ProductEncodingBenchmark
+//   java -cp target/benchmarks.jar com.TDD.benchmark.ProductEncodingSize [rows...]
+public class ProductEncodingSize {
+
+    public static void main(String[] args) throws IOException {
+        String[] rowCounts = args.length > 0 ? args : new String[] {"10000", "1000000"};
+        System.out.printf("%-8s %10s %14s %12s %14s %12s%n", "format", "rows", "bytes", "bytes/row", "gzip bytes", "gzip/row");
+        for (String rowCount : rowCounts) {
+            int rows = Integer.parseInt(rowCount);
+            List<Product> products = ProductEncodingBenchmark.products(rows);
+            for (String format : new String[] {"json", "smile", "cbor"}) {
+                byte[] encoded = ProductEncodingBenchmark.mapper(format).writeValueAsBytes(products);
+                long gzipped = gzippedSize(encoded);
+                System.out.printf("%-8s %10d %14d %12.1f %14d %12.1f%n",
+                        format, rows, encoded.length, encoded.length / (double) rows, gzipped, gzipped / (double) rows);
+            }
+        }
+    }
+
+    private static long gzippedSize(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.size();
+    }
+}
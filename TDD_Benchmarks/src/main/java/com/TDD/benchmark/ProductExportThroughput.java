@@ -0,0 +1,108 @@
+package com.TDD.benchmark;
+
+import com.TDD.controller.ProductController;
+import com.TDD.repository.ProductRepository;
+import com.TDD.service.ProductExporter;
+import com.TDD.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+// prints the rows per second and the heap used by a full catalog export in each format, against reading the
+// catalog with ProductService.findAll into one list and writing it as json, and against the cursor streamed json
+// array of GET /products. not a jmh benchmark: each path runs once after a warm-up round, into an output that
+// only counts the bytes, then once more with a thread collecting garbage every few milliseconds. the live heap
+// is the most the heap held after those collections over what it held before, which is what the path keeps
+// reachable while it runs
+//   java -Xmx2g -cp target/benchmarks.jar com.TDD.benchmark.ProductExportThroughput [products]
+public class ProductExportThroughput {
+
+    private interface Export {
+        void run(OutputStream output) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start(true, "product.cache.enabled=false")) {
+            BenchmarkApplication.fill(context.getBean("productRepositoryImpl", ProductRepository.class), products);
+            ProductService productService = context.getBean(ProductService.class);
+            ObjectMapper objectMapper = context.getBean(ObjectMapper.class);
+            ProductController productController = context.getBean(ProductController.class);
+            ProductExporter productExporter = context.getBean(ProductExporter.class);
+
+            for (boolean warmUp : new boolean[] {true, false}) {
+                run(warmUp, products, "findAll list as json", output -> objectMapper.writeValue(output, productService.findAll()));
+                run(warmUp, products, "GET /products stream", output -> productController.streamProducts(null).getBody().writeTo(output));
+                for (ProductExporter.Format format : ProductExporter.Format.values()) {
+                    run(warmUp, products, "export " + format, output -> productExporter.export(output, format));
+                    run(warmUp, products, "export " + format + " gzip", output -> {
+                        GZIPOutputStream gzip = new GZIPOutputStream(output, 1 << 16);
+                        productExporter.export(gzip, format);
+                        gzip.finish();
+                    });
+                }
+            }
+        }
+    }
+
+    private static void run(boolean warmUp, int products, String name, Export export) throws Exception {
+        CountingOutputStream output = new CountingOutputStream();
+        long start = System.nanoTime();
+        export.run(output);
+        long nanos = System.nanoTime() - start;
+
+        // a second run for the memory, collecting over and over while it goes
+        System.gc();
+        long before = usedHeap();
+        AtomicLong live = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                System.gc();
+                live.accumulateAndGet(usedHeap(), Math::max);
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+            }
+        });
+        sampler.start();
+        try {
+            export.run(new CountingOutputStream());
+        } finally {
+            running.set(false);
+            sampler.join();
+        }
+        if (!warmUp) {
+            System.out.printf("%-22s %9d rows/s %7.1f MB written, live heap %7.1f MB%n",
+                    name, products * 1_000_000_000L / nanos, mb(output.bytes), mb(Math.max(0, live.get() - before)));
+        }
+    }
+
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    // throws the bytes away, counting them
+    private static class CountingOutputStream extends OutputStream {
+        private long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.TDD.benchmark;
+
+import com.TDD.model.ImportReport;
+import com.TDD.model.Product;
+import com.TDD.service.ProductImporter;
+import com.TDD.service.ProductService;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+// prints the rows per second of a bulk import from csv and from ndjson, against saving the products one at a
+// time the way a client posting them one by one does, without the http part. not a jmh benchmark, each import
+// runs once on a fresh application
+//   java -cp target/benchmarks.jar com.TDD.benchmark.ProductImportThroughput [rows] [one by one rows]
+public class ProductImportThroughput {
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int oneByOneRows = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+
+        StringBuilder csv = new StringBuilder("name,quantity\n");
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            Product product = BenchmarkApplication.product(i);
+            csv.append('"').append(product.getName()).append("\",").append(product.getQuantity()).append('\n');
+            ndjson.append("{\"name\":\"").append(product.getName()).append("\",\"quantity\":").append(product.getQuantity()).append("}\n");
+        }
+        run("csv", csv, ProductImporter.Format.CSV);
+        run("ndjson", ndjson, ProductImporter.Format.NDJSON);
+
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start(false)) {
+            ProductService productService = context.getBean(ProductService.class);
+            long start = System.nanoTime();
+            for (int i = 0; i < oneByOneRows; i++) {
+                productService.save(BenchmarkApplication.product(i));
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("one save per product: %d rows in %d ms, %d rows/s%n", oneByOneRows, nanos / 1_000_000,
+                    oneByOneRows * 1_000_000_000L / nanos);
+        }
+    }
+
+    private static void run(String name, CharSequence input, ProductImporter.Format format) throws Exception {
+        byte[] bytes = input.toString().getBytes(StandardCharsets.UTF_8);
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start(false)) {
+            ImportReport report = context.getBean(ProductImporter.class)
+                    .importProducts(new ByteArrayInputStream(bytes), format);
+            System.out.printf("%s import: %d rows, %.1f MB in %d ms, %d rows/s, %d rejected%n", name, report.getImported(),
+                    bytes.length / (1024.0 * 1024.0), report.getMillis(), report.getRowsPerSecond(), report.getRejected());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.TDD.benchmark;
+
+import com.TDD.model.Product;
+import com.TDD.repository.ProductRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// the jdbc repository against in-memory H2 at several table sizes, without the cache in front of it
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductRepositoryBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    private int tableSize;
+
+    private ConfigurableApplicationContext context;
+    private ProductRepository productRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(false, "product.cache.enabled=false");
+        productRepository = context.getBean("productRepositoryImpl", ProductRepository.class);
+        BenchmarkApplication.fill(productRepository, tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Product> findById() {
+        return productRepository.findById(randomId());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Product> findAll() {
+        return productRepository.findAll();
+    }
+
+    // every call adds a row, so the table grows a little during the measurement
+    @Benchmark
+    public Product save() {
+        return productRepository.save(new Product("Benchmark product", 10, 1));
+    }
+
+    @Benchmark
+    public boolean update() {
+        long id = randomId();
+        return productRepository.update(new Product(id, "Product " + id, 20, 1));
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, tableSize + 1);
+    }
+}
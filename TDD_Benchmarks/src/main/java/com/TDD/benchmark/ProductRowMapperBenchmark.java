@@ -0,0 +1,59 @@
+package com.TDD.benchmark;
+
+import com.TDD.model.Product;
+import com.TDD.repository.ProductRepository;
+import com.TDD.repository.ProductRowMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// a full table scan mapped the old way - SELECT * with a new lambda looking columns up by name - against
+// the shared ProductRowMapper reading an explicit column list by position
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ProductRowMapperBenchmark {
+
+    @Param({"100000", "1000000"})
+    private int tableSize;
+
+    private ConfigurableApplicationContext context;
+    private JdbcTemplate jdbcTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(false, "product.cache.enabled=false");
+        jdbcTemplate = context.getBean(JdbcTemplate.class);
+        BenchmarkApplication.fill(context.getBean("productRepositoryImpl", ProductRepository.class), tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Product> selectStarByColumnName() {
+        RowMapper<Product> rowMapper = (rs, rowNumber) -> {
+            Product product = new Product();
+            product.setId(rs.getLong("id"));
+            product.setName(rs.getString("name"));
+            product.setQuantity(rs.getInt("quantity"));
+            product.setVersion(rs.getInt("version"));
+            return product;
+        };
+        return jdbcTemplate.query("SELECT * FROM Product", rowMapper);
+    }
+
+    @Benchmark
+    public List<Product> columnListByIndex() {
+        return jdbcTemplate.query("SELECT " + ProductRowMapper.COLUMNS + " FROM Product", ProductRowMapper.INSTANCE);
+    }
+}
@@ -0,0 +1,104 @@
+package com.TDD.benchmark;
+
+import com.TDD.model.Product;
+import com.TDD.service.ProductSearchIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// the product name search index at a million products: how long it takes to build at startup and how long
+// a search takes for each kind of match. ProductSearchIndexFootprint measures the memory it needs
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgs = "-Xmx4g")
+public class ProductSearchIndexBenchmark {
+
+    private static final String[] ADJECTIVES = {"red", "green", "blue", "black", "white", "large", "small",
+            "organic", "fresh", "frozen", "premium", "classic", "wireless", "portable", "stainless", "wooden"};
+    private static final String[] NOUNS = {"apple", "orange", "juice", "coffee", "teapot", "blender", "keyboard",
+            "monitor", "headphones", "backpack", "notebook", "pencil", "charger", "speaker", "lantern", "umbrella",
+            "sandwich", "yoghurt", "battery", "scissors", "toaster", "kettle", "blanket", "pillow"};
+    private static final String[] BRANDS = {"acme", "globex", "initech", "umbrella", "hooli", "stark", "wayne",
+            "tyrell", "cyberdyne", "soylent", "wonka", "gringotts"};
+
+    @Param({"1000000"})
+    private int indexSize;
+
+    private Product[] products;
+    private ProductSearchIndex searchIndex;
+
+    // the queries are a separate state so the build benchmark does not run once per kind of query
+    @State(Scope.Benchmark)
+    public static class Queries {
+        // exact: whole words, prefix: the start of a word as typed, typo: words with a letter swapped or missing
+        @Param({"exact", "prefix", "typo"})
+        private String queryKind;
+
+        private String[] queries;
+        private int nextQuery;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            switch (queryKind) {
+                case "exact":
+                    queries = new String[] {"blue kettle", "wonka coffee", "portable speaker", "m417"};
+                    break;
+                case "prefix":
+                    queries = new String[] {"blu ket", "won", "portable spe", "headph"};
+                    break;
+                default:
+                    queries = new String[] {"kettel", "wnoka coffee", "portabel speakr", "hedphones"};
+            }
+        }
+
+        String next() {
+            return queries[nextQuery++ % queries.length];
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        products = products(indexSize);
+        searchIndex = new ProductSearchIndex();
+        for (Product product : products) {
+            searchIndex.put(product);
+        }
+    }
+
+    // names like "acme wireless keyboard m417", a vocabulary of a few thousand words as in a real catalog
+    static Product[] products(int count) {
+        Random random = new Random(42);
+        Product[] products = new Product[count];
+        for (int i = 0; i < count; i++) {
+            String name = BRANDS[random.nextInt(BRANDS.length)] + " "
+                    + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                    + NOUNS[random.nextInt(NOUNS.length)] + " m" + random.nextInt(5000);
+            products[i] = new Product(i + 1, name, random.nextInt(1000), 1);
+        }
+        return products;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 3, time = 5)
+    @Measurement(iterations = 5, time = 5)
+    public List<Long> search(Queries queries) {
+        return searchIndex.search(queries.next(), 20);
+    }
+
+    // loading the whole catalog, the work done once at startup
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public ProductSearchIndex build() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        for (Product product : products) {
+            index.put(product);
+        }
+        return index;
+    }
+}
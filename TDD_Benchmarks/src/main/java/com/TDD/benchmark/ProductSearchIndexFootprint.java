@@ -0,0 +1,36 @@
+package com.TDD.benchmark;
+
+import com.TDD.model.Product;
+import com.TDD.service.ProductSearchIndex;
+
+// prints the heap the product name search index keeps per product. not a jmh benchmark, retained memory is
+// measured by comparing the used heap after a full gc with and without the index
+//   java -Xmx4g -cp target/benchmarks.jar com.TDD.benchmark.ProductSearchIndexFootprint [products]
+public class ProductSearchIndexFootprint {
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Product[] products = ProductSearchIndexBenchmark.products(count);
+
+        long before = usedHeap();
+        ProductSearchIndex searchIndex = new ProductSearchIndex();
+        for (Product product : products) {
+            searchIndex.put(product);
+        }
+        long after = usedHeap();
+
+        System.out.printf("products: %d%n", searchIndex.size());
+        System.out.printf("index heap: %.1f MB%n", (after - before) / (1024.0 * 1024.0));
+        System.out.printf("bytes per product: %.1f%n", (after - before) / (double) count);
+        // keep the products and the index reachable until both measurements are done
+        System.out.println(products.length + searchIndex.search("acme", 1).size() > 0 ? "" : "empty");
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
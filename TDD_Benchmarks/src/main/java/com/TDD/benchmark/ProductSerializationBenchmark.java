@@ -0,0 +1,63 @@
+package com.TDD.benchmark;
+
+import com.TDD.model.Product;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// jackson serialization of one product and of a product listing, the work the controller does for every response
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductSerializationBenchmark {
+
+    @Param({"100", "10000"})
+    private int listSize;
+
+    private ObjectWriter productWriter;
+    private ObjectWriter listWriter;
+    private ObjectReader productReader;
+    private Product product;
+    private List<Product> products;
+    private byte[] productJson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        productWriter = objectMapper.writerFor(Product.class);
+        listWriter = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, Product.class));
+        productReader = objectMapper.readerFor(Product.class);
+
+        product = new Product(1, "Product 1", 10, 1);
+        products = new ArrayList<>(listSize);
+        for (int i = 1; i <= listSize; i++) {
+            products.add(new Product(i, "Product " + i, i % 1000, 1));
+        }
+        productJson = productWriter.writeValueAsBytes(product);
+    }
+
+    @Benchmark
+    public byte[] writeProduct() throws JsonProcessingException {
+        return productWriter.writeValueAsBytes(product);
+    }
+
+    @Benchmark
+    public Product readProduct() throws IOException {
+        return productReader.readValue(productJson);
+    }
+
+    @Benchmark
+    public byte[] writeProductList() throws JsonProcessingException {
+        return listWriter.writeValueAsBytes(products);
+    }
+}
@@ -0,0 +1,45 @@
+package com.TDD.benchmark;
+
+import com.TDD.repository.ProductRepository;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// prints how long the application takes to be ready with a catalog restored from a snapshot, against filling
+// the empty database again. not a jmh benchmark, the application is started twice, to
+// fill the products and write the snapshot on shutdown, then to restore them from the snapshot
+//   java -Xmx6g -cp target/benchmarks.jar com.TDD.benchmark.ProductSnapshotStartup [products] [snapshot file]
+public class ProductSnapshotStartup {
+
+    public static void main(String[] args) throws Exception {
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        Path snapshot = Path.of(args.length > 1 ? args[1] : "target/products.snapshot");
+        Files.deleteIfExists(snapshot);
+        String[] properties = {
+                "product.cache.enabled=false",
+                "product.jdbc.slow-statement-threshold=0",
+                "product.snapshot.enabled=true",
+                "product.snapshot.interval=0",
+                "product.snapshot.path=" + snapshot};
+
+        long start = System.nanoTime();
+        long shutdownStart;
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start(false, properties)) {
+            BenchmarkApplication.fill(context.getBean("productRepositoryImpl", ProductRepository.class), products);
+            System.out.printf("empty start and fill of %d products: %d ms%n", products, millisSince(start));
+            shutdownStart = System.nanoTime();
+        }
+        System.out.printf("shutdown with snapshot: %d ms, %.1f MB%n", millisSince(shutdownStart), Files.size(snapshot) / (1024.0 * 1024.0));
+
+        start = System.nanoTime();
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start(false, properties)) {
+            long restored = context.getBean("productRepositoryImpl", ProductRepository.class).count();
+            System.out.printf("start from snapshot: %d ms, %d products%n", millisSince(start), restored);
+        }
+    }
+
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
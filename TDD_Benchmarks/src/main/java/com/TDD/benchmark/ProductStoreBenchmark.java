@@ -0,0 +1,73 @@
+package com.TDD.benchmark;
+
+import com.TDD.model.Product;
+import com.TDD.repository.OffHeapProductRepository;
+import com.TDD.repository.ProductRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// reads by id from the jdbc repository against the off-heap store loaded from the same table. run with
+// -prof gc for the allocation per read. 10 million products need a bigger heap for h2:
+//   java -jar target/benchmarks.jar ProductStoreBenchmark -p products=10000000 -jvmArgs "-Xmx12g -XX:MaxDirectMemorySize=2g"
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-XX:MaxDirectMemorySize=1g"})
+public class ProductStoreBenchmark {
+
+    @Param({"jdbc", "offheap"})
+    private String repository;
+
+    @Param({"1000000"})
+    private int products;
+
+    private ConfigurableApplicationContext context;
+    private ProductRepository productRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.start(false, "product.cache.enabled=false");
+        ProductRepository jdbcRepository = context.getBean("productRepositoryImpl", ProductRepository.class);
+        BenchmarkApplication.fill(jdbcRepository, products);
+        productRepository = repository.equals("offheap") ? load(jdbcRepository, products) : jdbcRepository;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Product> findById() {
+        return productRepository.findById(randomId());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<Product> findAllByIds() {
+        List<Long> ids = new ArrayList<>(100);
+        for (int i = 0; i < 100; i++) {
+            ids.add(randomId());
+        }
+        return productRepository.findAllByIds(ids);
+    }
+
+    // the off-heap repository over the jdbc one, loaded the way the offheap profile loads it at startup
+    static OffHeapProductRepository load(ProductRepository jdbcRepository, int products) {
+        OffHeapProductRepository offHeapRepository = new OffHeapProductRepository(jdbcRepository, products);
+        offHeapRepository.afterSingletonsInstantiated();
+        return offHeapRepository;
+    }
+
+    private long randomId() {
+        return ThreadLocalRandom.current().nextLong(1, products + 1);
+    }
+}
@@ -0,0 +1,90 @@
+package com.TDD.benchmark;
+
+import com.TDD.repository.OffHeapProductRepository;
+import com.TDD.repository.ProductRepository;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+
+// prints what the off-heap store costs the java heap and what reads by id cost the garbage collector, next
+// to the jdbc repository. not a jmh benchmark: the heap is compared after a full gc before and after the
+// store is loaded, and the collections during a run of reads are counted from the gc beans.
+// the in-memory h2 table itself lives on the heap too, it is measured separately
+//   java -Xmx12g -XX:MaxDirectMemorySize=2g -cp target/benchmarks.jar com.TDD.benchmark.ProductStoreFootprint [products] [reads]
+public class ProductStoreFootprint {
+
+    public static void main(String[] args) {
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000;
+
+        long empty = usedHeap();
+        try (ConfigurableApplicationContext context = BenchmarkApplication.start(false, "product.cache.enabled=false")) {
+            ProductRepository jdbcRepository = context.getBean("productRepositoryImpl", ProductRepository.class);
+            long started = usedHeap();
+            BenchmarkApplication.fill(jdbcRepository, products);
+            long filled = usedHeap();
+
+            long loadStart = System.nanoTime();
+            OffHeapProductRepository offHeapRepository = ProductStoreBenchmark.load(jdbcRepository, products);
+            long loadNanos = System.nanoTime() - loadStart;
+            long loaded = usedHeap();
+
+            System.out.printf("products: %d%n", offHeapRepository.count());
+            System.out.printf("application heap: %.1f MB%n", mb(started - empty));
+            System.out.printf("h2 table heap: %.1f MB, %.1f bytes per product%n", mb(filled - started), (filled - started) / (double) products);
+            System.out.printf("off-heap store: %.1f MB direct, %.1f MB heap, %.1f direct bytes per product, loaded in %d ms%n",
+                    mb(offHeapRepository.store().offHeapBytes()), mb(loaded - filled),
+                    offHeapRepository.store().offHeapBytes() / (double) products, loadNanos / 1_000_000);
+
+            read("jdbc", jdbcRepository, products, reads);
+            read("offheap", offHeapRepository, products, reads);
+        }
+    }
+
+    // random reads by id, with the time they took and the collections that ran meanwhile
+    private static void read(String name, ProductRepository productRepository, int products, int reads) {
+        usedHeap();
+        long collections = collections();
+        long collectionMillis = collectionMillis();
+        long start = System.nanoTime();
+        long found = 0;
+        for (int i = 0; i < reads; i++) {
+            if (productRepository.findById(ThreadLocalRandom.current().nextLong(1, products + 1)).isPresent()) {
+                found++;
+            }
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%-8s %d reads, %.0f ns per read, %d gc collections, %d ms in gc, %d found%n",
+                name, reads, nanos / (double) reads, collections() - collections, collectionMillis() - collectionMillis, found);
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += collector.getCollectionCount();
+        }
+        return count;
+    }
+
+    private static long collectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += collector.getCollectionTime();
+        }
+        return millis;
+    }
+
+    private static double mb(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,70 @@
+package com.TDD.benchmark;
+
+import com.TDD.repository.ProductRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// load test of GET /product/{id} over http with tomcat's platform thread pool against virtual threads.
+// every jmh thread is one client with one request in flight, so the thread count is the offered concurrency.
+// sample time mode reports the latency percentiles, including p99, in the result file. run with different
+// -t values (the default is 400, twice tomcat's 200 platform threads) to find where each mode stops keeping up
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(400)
+@Fork(1)
+public class ThreadModelBenchmark {
+
+    @Param({"platform", "virtual"})
+    private String threads;
+
+    // time every jdbc statement waits, as if the database were on another machine
+    @Param({"5"})
+    private int databaseLatencyMillis;
+
+    @Param({"10000"})
+    private int tableSize;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient httpClient;
+    private String baseUri;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.builder(true,
+                        "server.port=0",
+                        "product.cache.enabled=false",
+                        "spring.threads.virtual.enabled=" + "virtual".equals(threads),
+                        // the pool must not be the limit, the request threads are what is measured
+                        "spring.datasource.hikari.maximum-pool-size=500")
+                .initializers(applicationContext -> applicationContext.getBeanFactory()
+                        .addBeanPostProcessor(new DatabaseLatency(databaseLatencyMillis)))
+                .run();
+        BenchmarkApplication.fill(context.getBean("productRepositoryImpl", ProductRepository.class), tableSize);
+
+        baseUri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int getProduct() throws IOException, InterruptedException {
+        long id = ThreadLocalRandom.current().nextLong(1, tableSize + 1);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri + "/product/" + id)).GET().build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
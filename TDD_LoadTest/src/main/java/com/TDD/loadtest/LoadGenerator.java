@@ -0,0 +1,246 @@
+package com.TDD.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// open-loop load: requests are started on a fixed schedule, whether or not the earlier ones have answered,
+// and the latency of a request is measured from the time it was scheduled to start. a server that stalls
+// therefore shows up in the percentiles with the full time the requests behind the stall waited, instead of
+// the load generator quietly slowing down with it (coordinated omission)
+final class LoadGenerator {
+
+    // products listed per LIST request
+    private static final int PAGE_SIZE = 100;
+    // an answer that takes longer is counted as failed
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final String baseUri;
+    private final RequestMix mix;
+    private final int seededProducts;
+    // requests allowed to wait for an answer at once. more are counted as dropped instead of started, so
+    // a server that stops answering cannot make the generator run out of memory
+    private final Semaphore inFlight;
+
+    private final Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+    // number of answers per operation and http status, status 0 when no answer came
+    private final Map<Operation, Map<Integer, LongAdder>> statuses = new EnumMap<>(Operation.class);
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    // last version seen for a product, sent as If-Match by PUT
+    private final ConcurrentHashMap<Long, Integer> versions = new ConcurrentHashMap<>();
+    // products created by POST, taken by DELETE
+    private final ConcurrentLinkedQueue<Long> createdIds = new ConcurrentLinkedQueue<>();
+    private final Random random = new Random(42);
+
+    LoadGenerator(String baseUri, RequestMix mix, int seededProducts, int maxInFlight) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        this.baseUri = baseUri;
+        this.mix = mix;
+        this.seededProducts = seededProducts;
+        this.inFlight = new Semaphore(maxInFlight);
+        for (Operation operation : Operation.values()) {
+            // microseconds, three significant digits, the range grows as needed
+            latencies.put(operation, new Recorder(3));
+            statuses.put(operation, new ConcurrentHashMap<>());
+        }
+    }
+
+    // send requests at rate per second for the duration, then wait for the last answers
+    void run(double rate, Duration duration) {
+        double intervalNanos = 1_000_000_000.0 / rate;
+        long start = System.nanoTime();
+        long end = start + duration.toNanos();
+        // one virtual thread per request, a blocked request costs a little memory and no platform thread
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; ; i++) {
+                long scheduled = start + (long) (i * intervalNanos);
+                if (scheduled >= end) {
+                    break;
+                }
+                long wait = scheduled - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                // when the generator itself falls behind the requests are sent at once, still timed from
+                // their scheduled start
+                Operation operation = mix.pick(random);
+                if (!inFlight.tryAcquire()) {
+                    dropped.increment();
+                    continue;
+                }
+                executor.execute(() -> {
+                    try {
+                        send(operation, scheduled);
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        }
+    }
+
+    // forget what was measured so far, used after the warmup
+    void reset() {
+        latencies.values().forEach(Recorder::reset);
+        statuses.values().forEach(Map::clear);
+        dropped.reset();
+        completed.reset();
+    }
+
+    // answers received so far
+    long completed() {
+        return completed.sum();
+    }
+
+    // print throughput and latency percentiles per operation and write the full percentile distribution of
+    // each operation to an .hgrm file in the directory, the format the HdrHistogram plotter reads
+    void report(PrintStream out, double seconds, Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Histogram total = new Histogram(3);
+        out.println();
+        out.printf("%-8s %10s %10s %9s %9s %9s %9s %9s %9s  %s%n",
+                "", "requests", "per sec", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "p99.99 ms", "max ms", "status");
+        for (Operation operation : Operation.values()) {
+            Histogram histogram = latencies.get(operation).getIntervalHistogram();
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+            total.add(histogram);
+            printRow(out, operation.label(), histogram, seconds, statusText(statuses.get(operation)));
+            try (PrintStream file = new PrintStream(Files.newOutputStream(directory.resolve(operation.label() + ".hgrm")))) {
+                histogram.outputPercentileDistribution(file, 1000.0);
+            }
+        }
+        if (total.getTotalCount() > 0) {
+            printRow(out, "all", total, seconds, "");
+            try (PrintStream file = new PrintStream(Files.newOutputStream(directory.resolve("all.hgrm")))) {
+                total.outputPercentileDistribution(file, 1000.0);
+            }
+        }
+        out.printf("dropped: %d requests not sent because the in-flight limit was reached%n", dropped.sum());
+        out.printf("latency histograms (milliseconds) written to %s%n", directory.toAbsolutePath());
+    }
+
+    private static void printRow(PrintStream out, String label, Histogram histogram, double seconds, String status) {
+        out.printf("%-8s %10d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n",
+                label,
+                histogram.getTotalCount(),
+                histogram.getTotalCount() / seconds,
+                millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)),
+                millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getValueAtPercentile(99.99)),
+                millis(histogram.getMaxValue()),
+                status);
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private static String statusText(Map<Integer, LongAdder> counts) {
+        StringBuilder text = new StringBuilder();
+        new TreeMap<>(counts).forEach((status, count) -> {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            text.append(status == 0 ? "failed" : status.toString()).append('=').append(count.sum());
+        });
+        return text.toString();
+    }
+
+    private void send(Operation operation, long scheduled) {
+        int status;
+        try {
+            HttpResponse<String> response = httpClient.send(request(operation), HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+            remember(operation, response);
+        } catch (IOException e) {
+            status = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        latencies.get(operation).recordValue(Math.max(0, (System.nanoTime() - scheduled) / 1000));
+        statuses.get(operation).computeIfAbsent(status, key -> new LongAdder()).increment();
+        completed.increment();
+    }
+
+    private HttpRequest request(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (operation) {
+            case GET:
+                return builder("/product/" + seededId(random)).GET().build();
+            case LIST:
+                long after = random.nextLong(Math.max(1, seededProducts - PAGE_SIZE));
+                return builder("/products?after=" + after + "&limit=" + PAGE_SIZE).GET().build();
+            case POST:
+                return json(builder("/product"), "POST",
+                        "{\"name\":\"Load " + random.nextInt(1_000_000) + "\",\"quantity\":" + random.nextInt(1000) + ",\"version\":1}");
+            case PUT:
+                long id = seededId(random);
+                return json(builder("/product/" + id).header("If-Match", versions.getOrDefault(id, 1).toString()), "PUT",
+                        "{\"name\":\"Product " + id + "\",\"quantity\":" + random.nextInt(1000) + "}");
+            default:
+                Long created = createdIds.poll();
+                // before any POST has answered there is nothing of this test to delete, the request gets a 404
+                long deleteId = created != null ? created : seededProducts + 1_000_000_000L;
+                return builder("/product/" + deleteId).DELETE().build();
+        }
+    }
+
+    // keep the versions and created ids up to date from the answers
+    private void remember(Operation operation, HttpResponse<String> response) {
+        String eTag = response.headers().firstValue("ETag").orElse(null);
+        String location = response.headers().firstValue("Location").orElse(null);
+        if (eTag == null || location == null) {
+            return;
+        }
+        long id = Long.parseLong(location.substring(location.lastIndexOf('/') + 1));
+        versions.put(id, Integer.parseInt(eTag.replace("\"", "").replace("W/", "")));
+        if (operation == Operation.POST && response.statusCode() == 201) {
+            createdIds.add(id);
+        }
+    }
+
+    private long seededId(ThreadLocalRandom random) {
+        return random.nextLong(1, seededProducts + 1);
+    }
+
+    private HttpRequest.Builder builder(String path) {
+        return HttpRequest.newBuilder(URI.create(baseUri + path)).timeout(REQUEST_TIMEOUT);
+    }
+
+    private static HttpRequest json(HttpRequest.Builder builder, String method, String body) {
+        return builder.header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+package com.TDD.loadtest;
+
+import com.TDD.Application;
+import com.TDD.model.Product;
+import com.TDD.service.ProductService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// starts the demo application on its own in-memory database, fills it with products and sends it an open-loop
+// mix of requests at a fixed rate. options, with their defaults:
+//   --rate=1000                                      requests per second
+//   --duration=30s --warmup=10s                      measured time, and time run first and not measured
+//   --mix=get=60,list=10,post=10,put=15,delete=5     weights of the operations, see Operation
+//   --products=10000                                 products created before the test
+//   --max-in-flight=10000                            requests waiting for an answer before more are dropped
+//   --target=http://host:port                        load an application that is already running instead
+// every other argument is passed to the application, for example --product.cache.enabled=false or
+// --spring.profiles.active=virtual
+public final class LoadTest {
+
+    // products inserted per saveAll call when filling the table
+    private static final int FILL_CHUNK = 10_000;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        options.put("rate", "1000");
+        options.put("duration", "30s");
+        options.put("warmup", "10s");
+        options.put("mix", "get=60,list=10,post=10,put=15,delete=5");
+        options.put("products", "10000");
+        options.put("max-in-flight", "10000");
+        options.put("target", "");
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String name = arg.startsWith("--") && equals > 2 ? arg.substring(2, equals) : null;
+            if (name != null && options.containsKey(name)) {
+                options.put(name, arg.substring(equals + 1));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+
+        double rate = Double.parseDouble(options.get("rate"));
+        Duration duration = DurationStyle.detectAndParse(options.get("duration"));
+        Duration warmup = DurationStyle.detectAndParse(options.get("warmup"));
+        RequestMix mix = RequestMix.parse(options.get("mix"));
+        int products = Integer.parseInt(options.get("products"));
+
+        ConfigurableApplicationContext context = null;
+        String baseUri = options.get("target");
+        if (baseUri.isEmpty()) {
+            context = start(applicationArgs.toArray(new String[0]));
+            fill(context.getBean(ProductService.class), products);
+            baseUri = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        }
+
+        System.out.printf("%s at %.0f requests per second, mix %s, %d products%n", baseUri, rate, mix, products);
+        LoadGenerator generator = new LoadGenerator(baseUri, mix, products, Integer.parseInt(options.get("max-in-flight")));
+        ScheduledExecutorService progress = Executors.newSingleThreadScheduledExecutor();
+        try {
+            if (!warmup.isZero()) {
+                System.out.printf("warmup %ds%n", warmup.getSeconds());
+                generator.run(rate, warmup);
+                generator.reset();
+            }
+            System.out.printf("measuring %ds%n", duration.getSeconds());
+            long[] lastCompleted = {0};
+            progress.scheduleAtFixedRate(() -> {
+                long completed = generator.completed();
+                System.out.printf("  %d answers per second%n", (completed - lastCompleted[0]) / 5);
+                lastCompleted[0] = completed;
+            }, 5, 5, TimeUnit.SECONDS);
+
+            long started = System.nanoTime();
+            generator.run(rate, duration);
+            double seconds = (System.nanoTime() - started) / 1_000_000_000.0;
+            progress.shutdownNow();
+            generator.report(System.out, seconds, Paths.get("target", "loadtest"));
+        } finally {
+            progress.shutdownNow();
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    // the application with a web server on a free port and its own in-memory h2 database
+    private static ConfigurableApplicationContext start(String[] args) {
+        return new SpringApplicationBuilder(Application.class)
+                .properties(
+                        "spring.main.banner-mode=off",
+                        "logging.level.root=WARN",
+                        "server.port=0",
+                        "spring.h2.console.enabled=false",
+                        "spring.datasource.url=jdbc:h2:mem:loadtest;LAZY_QUERY_EXECUTION=1")
+                .run(args);
+    }
+
+    // through the service, so the search index and the products etag know the products too.
+    // the ids of the new products run from 1 to count
+    private static void fill(ProductService productService, int count) {
+        for (int start = 0; start < count; start += FILL_CHUNK) {
+            int end = Math.min(start + FILL_CHUNK, count);
+            List<Product> products = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                products.add(new Product("Product " + i, i % 1000, 1));
+            }
+            productService.saveAll(products);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.TDD.loadtest;
+
+// the requests the load generator sends, named as they are given in --mix
+enum Operation {
+    // GET /product/{id} of a product created before the test
+    GET,
+    // GET /products?after=&limit=100, one page of the list
+    LIST,
+    // POST /product
+    POST,
+    // PUT /product/{id} with the last version seen for the product as If-Match
+    PUT,
+    // DELETE /product/{id} of a product a POST of this test created
+    DELETE;
+
+    String label() {
+        return name().toLowerCase();
+    }
+}
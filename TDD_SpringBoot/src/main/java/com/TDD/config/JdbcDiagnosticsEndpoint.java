@@ -0,0 +1,71 @@
+package com.TDD.config;
+
+import com.TDD.repository.SlowStatementLog;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// GET /actuator/jdbc - the state of the connection pool, how long requests waited for a connection and the
+// latest slow statements. the same pool numbers are published as hikaricp.* metrics for dashboards, this is
+// the place to look when a single instance is slow
+@Component
+@Endpoint(id = "jdbc")
+public class JdbcDiagnosticsEndpoint {
+
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private SlowStatementLog slowStatementLog;
+
+    @ReadOperation
+    public Map<String, Object> jdbc() throws SQLException {
+        Map<String, Object> report = new LinkedHashMap<>();
+        HikariDataSource hikari = dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        if (hikari != null) {
+            Map<String, Object> pool = new LinkedHashMap<>();
+            pool.put("name", hikari.getPoolName());
+            pool.put("maximumPoolSize", hikari.getMaximumPoolSize());
+            pool.put("minimumIdle", hikari.getMinimumIdle());
+            pool.put("connectionTimeoutMillis", hikari.getConnectionTimeout());
+            HikariPoolMXBean poolBean = hikari.getHikariPoolMXBean();
+            if (poolBean != null) {
+                pool.put("active", poolBean.getActiveConnections());
+                pool.put("idle", poolBean.getIdleConnections());
+                pool.put("total", poolBean.getTotalConnections());
+                pool.put("waiting", poolBean.getThreadsAwaitingConnection());
+            }
+            report.put("pool", pool);
+
+            // hikari times every connection checkout, spring boot registers the timer with the pool name as tag
+            Timer acquire = meterRegistry.find("hikaricp.connections.acquire").tag("pool", hikari.getPoolName()).timer();
+            if (acquire != null) {
+                Map<String, Object> wait = new LinkedHashMap<>();
+                wait.put("count", acquire.count());
+                wait.put("meanMillis", acquire.mean(TimeUnit.MILLISECONDS));
+                wait.put("maxMillis", acquire.max(TimeUnit.MILLISECONDS));
+                wait.put("totalMillis", acquire.totalTime(TimeUnit.MILLISECONDS));
+                report.put("connectionWait", wait);
+            }
+        }
+
+        Map<String, Object> slowStatements = new LinkedHashMap<>();
+        slowStatements.put("thresholdMillis", slowStatementLog.threshold().toMillis());
+        slowStatements.put("count", slowStatementLog.slowCount());
+        slowStatements.put("recent", slowStatementLog.recent());
+        report.put("slowStatements", slowStatements);
+        return report;
+    }
+}
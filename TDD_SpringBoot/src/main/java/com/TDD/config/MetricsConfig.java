@@ -0,0 +1,30 @@
+package com.TDD.config;
+
+import com.TDD.repository.ProductRepository;
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+// metrics for the product operations. the controller layer is timed by the http.server.requests metric,
+// the service and repository layers by the @Timed annotations on their methods
+@Configuration
+public class MetricsConfig {
+
+    // records a timer for every method annotated with @Timed
+    @Bean
+    public TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    // number of rows in the product table, counted whenever the metric is read
+    @Bean
+    public MeterBinder productRowsGauge(ProductRepository productRepository) {
+        return registry -> Gauge.builder("product.rows", productRepository, ProductRepository::count)
+                .description("Number of rows in the product table")
+                .baseUnit("rows")
+                .register(registry);
+    }
+}
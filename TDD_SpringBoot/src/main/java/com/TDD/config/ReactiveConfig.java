@@ -0,0 +1,50 @@
+package com.TDD.config;
+
+import com.TDD.repository.R2dbcProductRepository;
+import com.TDD.repository.ReactiveProductRepository;
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+// web server and r2dbc connection for the reactive profile
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig {
+
+    // tomcat is on the classpath for spring mvc and would be picked first, run webflux on netty's event loop instead
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    // the connection factory is kept out of the application context, an r2dbc ConnectionFactory bean would make
+    // spring boot skip the jdbc data source that jpa still needs to create the schema. the h2 driver opens a
+    // session per connection, so the connections are pooled instead of opened for every statement. the pool is
+    // closed with the repository
+    @Bean
+    public ReactiveProductRepository reactiveProductRepository(@Value("${product.r2dbc.database:testdb}") String database,
+                                                               @Value("${spring.datasource.username}") String username,
+                                                               @Value("${spring.datasource.password}") String password,
+                                                               @Value("${product.r2dbc.pool.initial-size:2}") int initialSize,
+                                                               @Value("${product.r2dbc.pool.max-size:10}") int maxSize,
+                                                               @Value("${product.r2dbc.pool.max-idle-time:30m}") Duration maxIdleTime) {
+        H2ConnectionFactory connectionFactory = new H2ConnectionFactory(H2ConnectionConfiguration.builder()
+                .inMemory(database)
+                .username(username)
+                .password(password)
+                .build());
+        return new R2dbcProductRepository(new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(initialSize)
+                .maxSize(maxSize)
+                .maxIdleTime(maxIdleTime)
+                .build()));
+    }
+}
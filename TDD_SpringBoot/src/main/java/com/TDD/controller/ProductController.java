@@ -1,26 +1,94 @@
 package com.TDD.controller;
 
+import com.TDD.config.SerializationConfig;
+import com.TDD.model.BatchItemResult;
+import com.TDD.model.ImportReport;
 import com.TDD.model.Product;
+import com.TDD.model.ProductChange;
+import com.TDD.model.ProductQuery;
+import com.TDD.model.QuantityChange;
+import com.TDD.model.UpdateResult;
+import com.TDD.service.ProductChangeFeed;
+import com.TDD.service.ProductExporter;
+import com.TDD.service.ProductImporter;
 import com.TDD.service.ProductService;
-import org.apache.coyote.Response;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ProblemDetail;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+// blocking spring mvc controller, replaced by ReactiveProductController when the reactive profile is active
 @RestController
+@Profile("!reactive")
 public class ProductController {
+    // default and largest number of products returned in one page
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    // largest number of ids in one multi-get
+    private static final int MAX_IDS = 10_000;
+    // default number of search results
+    private static final int DEFAULT_SEARCH_SIZE = 20;
+
     @Autowired
    private ProductService productService;
+    // used to write products one at a time when streaming, in json or one of the binary encodings
+    @Autowired
+    private ObjectMapper objectMapper;
+    @Autowired
+    private MappingJackson2CborHttpMessageConverter cborConverter;
+    @Autowired
+    private MappingJackson2SmileHttpMessageConverter smileConverter;
+    // bulk imports of POST /products/import
+    @Autowired
+    private ProductImporter productImporter;
+    // bulk exports of GET /products/export
+    @Autowired
+    private ProductExporter productExporter;
+    // recent product changes, read by GET /products/changes
+    @Autowired
+    private ProductChangeFeed changeFeed;
+    // how long a server-sent events connection stays open, the client reconnects with Last-Event-ID after it
+    @Value("${product.changes.sse-timeout:30m}")
+    private Duration sseTimeout;
     //ResponseEntity returns the status code, headers and body.
 
     // get the product based on the id
+    // a client sending the etag of the current version gets 304 not modified, checked from the version alone
     @GetMapping("/product/{id}")
-    public ResponseEntity<?> getProduct(@PathVariable Long id) {
+    public ResponseEntity<?> getProduct(@PathVariable Long id, WebRequest request) {
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            Optional<Integer> version = productService.findVersion(id);
+            // checkNotModified sets the 304 status and etag header, nothing else needs to be written
+            if (version.isPresent() && request.checkNotModified(Integer.toString(version.get()))) {
+                return null;
+            }
+        }
         return productService.findbyId(id)
                 .map(product -> {
                    try {
@@ -37,13 +105,236 @@ public class ProductController {
                 .orElse(ResponseEntity.notFound().build()); // if the product does not exist return not found status
     }
 
-    // get all products from the url, return type iterable which is the collection interface
-    // implementations can be returned later
+    // get all products from the url. without any parameter the whole table is streamed, see streamAll
+    // the etag changes with every write, so a client polling an unchanged list gets 304 not modified
+    @GetMapping(value = "/products",
+            params = {"!ids", "!after", "!limit", "!namePrefix", "!nameContains", "!minQuantity", "!maxQuantity", "!sort", "!fields"})
+    public ResponseEntity<StreamingResponseBody> getAllProducts(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                                                WebRequest request) {
+        // the tag must be read before the products, see productsVersion
+        String productsVersion = productsTag();
+        if (request.checkNotModified(productsVersion)) {
+            return null;
+        }
+        // checkNotModified has already put the etag on the response
+        return streamAll(accept);
+    } // end of get all method
+
+    // get many products by id, GET /products?ids=1,2,3. one result per id in request order, with the product
+    // or a not found status, read with a few IN list queries instead of one request per product
+    @GetMapping(value = "/products", params = "ids")
+    public ResponseEntity<List<BatchItemResult>> getProductsByIds(@RequestParam List<Long> ids) {
+        if (ids.size() > MAX_IDS) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(productService.findAllByIds(ids));
+    } // end of multi get method
+
+    // the same as GET /products?ids= with the ids in the body, for lists too long for a url
+    @PostMapping("/products/lookup")
+    public ResponseEntity<List<BatchItemResult>> lookupProducts(@RequestBody List<Long> ids) {
+        return getProductsByIds(ids);
+    } // end of lookup method
+
+    // when after or limit is given only one page is returned, ordered by id, with a link to the next page
+    // the products can be filtered by name and quantity, sorted with sort=field or sort=field,desc and reduced
+    // to some fields with fields=name,quantity. all of it is done by the database
     @GetMapping("/products")
-    public Iterable<Product> getProducts() {
-        return productService.findAll();
+    public ResponseEntity<?> getProducts(@RequestParam(required = false) Long after,
+                                         @RequestParam(required = false) Integer limit,
+                                         @RequestParam(required = false) String namePrefix,
+                                         @RequestParam(required = false) String nameContains,
+                                         @RequestParam(required = false) Integer minQuantity,
+                                         @RequestParam(required = false) Integer maxQuantity,
+                                         @RequestParam(required = false) String sort,
+                                         @RequestParam(required = false) List<String> fields,
+                                         WebRequest request) {
+        // the tag must be read before the products, see productsVersion
+        String productsVersion = productsTag();
+        if (request.checkNotModified(productsVersion)) {
+            return null;
+        }
+        boolean search = namePrefix != null || nameContains != null || minQuantity != null || maxQuantity != null
+                || sort != null || fields != null;
+        boolean paged = after != null || limit != null;
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+
+        if (!search) {
+            List<Product> page = productService.findAfter(after == null ? 0 : after, pageSize);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(productsVersion);
+            // a full page means there may be more rows, the last id on the page is the next cursor
+            if (page.size() == pageSize) {
+                response.header(HttpHeaders.LINK, nextPageLink(request, page.get(page.size() - 1).getId(), pageSize));
+            }
+            return response.body(page);
+        }
+
+        ProductQuery query = new ProductQuery();
+        query.setNamePrefix(namePrefix);
+        query.setNameContains(nameContains);
+        query.setMinQuantity(minQuantity);
+        query.setMaxQuantity(maxQuantity);
+        if (sort != null) {
+            String[] sortParts = sort.split(",");
+            query.setSort(sortParts[0]);
+            query.setDescending(sortParts.length > 1 && sortParts[1].equalsIgnoreCase("desc"));
+        }
+        if (paged) {
+            query.setAfter(after);
+            query.setLimit(pageSize);
+        }
+
+        List<?> page;
+        Long lastId = null;
+        try {
+            if (fields == null) {
+                List<Product> products = productService.findAll(query);
+                page = products;
+                lastId = products.isEmpty() ? null : products.get(products.size() - 1).getId();
+            } else {
+                List<Map<String, Object>> rows = productService.findAll(query, fields);
+                page = rows;
+                lastId = rows.isEmpty() ? null : (Long) rows.get(rows.size() - 1).get("id");
+            }
+        } catch (IllegalArgumentException | InvalidDataAccessApiUsageException e) {
+            // unknown sort or projection field, or after with a sort not by id. the repository is a @Repository,
+            // so its IllegalArgumentException arrives translated
+            return ResponseEntity.badRequest().build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(productsVersion);
+        // the id is only a cursor when the products are sorted by it
+        boolean sortedById = query.getSort() == null || query.getSort().equals("id");
+        if (paged && sortedById && page.size() == pageSize && lastId != null) {
+            response.header(HttpHeaders.LINK, nextPageLink(request, lastId, pageSize));
+        }
+        return response.body(page);
     } // end of get method
 
+    // search the product names, best match first. words may be the start of a name word or have a typo
+    @GetMapping("/products/search")
+    public ResponseEntity<List<Product>> searchProducts(@RequestParam String q,
+                                                        @RequestParam(required = false) Integer limit) {
+        int size = limit == null ? DEFAULT_SEARCH_SIZE : Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        return ResponseEntity.ok(productService.search(q, size));
+    } // end of search method
+
+    // the product changes after the since sequence, oldest first. a client that polls keeps the sequence of
+    // the last change it got. 410 gone when the changes after since are no longer kept, the client then loads
+    // the products again and goes on from the etag of GET /products, which is the latest sequence
+    @GetMapping(value = "/products/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<ProductChange>> getChanges(@RequestParam long since,
+                                                          @RequestParam(required = false) Integer limit) {
+        int size = limit == null ? MAX_PAGE_SIZE : Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        return changeFeed.since(since, size)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.status(HttpStatus.GONE).build());
+    } // end of changes method
+
+    // the product changes as server-sent events, from the since sequence or the Last-Event-ID the browser sends
+    // when it reconnects, otherwise from now. every event has the sequence as its id and the type as its name.
+    // a "reset" event with the latest sequence ends the stream when the changes to resume from are gone
+    @GetMapping(value = "/products/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(@RequestParam(required = false) Long since,
+                                    @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(sseTimeout.toMillis());
+        long after = lastEventId != null ? lastEventId : since != null ? since : changeFeed.latestSequence();
+        ProductChangeFeed.Subscription subscription = changeFeed.subscribe(after, new ProductChangeFeed.ChangeSink() {
+            @Override
+            public void send(ProductChange change) throws IOException {
+                emitter.send(SseEmitter.event()
+                        .id(Long.toString(change.getSequence()))
+                        .name(change.getType().name().toLowerCase())
+                        .data(change, MediaType.APPLICATION_JSON));
+            }
+
+            @Override
+            public void gap(long latestSequence) throws IOException {
+                emitter.send(SseEmitter.event().name("reset").data(latestSequence));
+                emitter.complete();
+            }
+
+            @Override
+            public void keepAlive() throws IOException {
+                emitter.send(SseEmitter.event().comment("keep-alive"));
+            }
+        });
+        emitter.onCompletion(subscription::cancel);
+        emitter.onTimeout(subscription::cancel);
+        emitter.onError(error -> subscription.cancel());
+        return emitter;
+    } // end of stream changes method
+
+    // weak etag of the product listings. tomcat does not compress a response with a strong etag, and the
+    // gzipped body is not byte for byte the same as the plain one anyway
+    private String productsTag() {
+        return "W/\"" + productService.productsVersion() + "\"";
+    }
+
+    // link to the next page, with the same filters as this request
+    private static String nextPageLink(WebRequest request, long nextCursor, int pageSize) {
+        UriComponentsBuilder next = UriComponentsBuilder.fromPath("/products");
+        request.getParameterMap().forEach((name, values) -> {
+            if (!name.equals("after") && !name.equals("limit")) {
+                next.queryParam(name, (Object[]) values);
+            }
+        });
+        next.queryParam("after", nextCursor).queryParam("limit", pageSize);
+        return "<" + next.toUriString() + ">; rel=\"next\"";
+    }
+
+    // stream all products as an array, rows are written to the response as the database returns them.
+    // json unless the client accepts cbor or smile by name
+    @GetMapping("/products/stream")
+    public ResponseEntity<StreamingResponseBody> streamProducts(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
+        return streamAll(accept);
+    } // end of stream method
+
+    // the whole product table written straight from the database cursor, so neither the time to the first byte
+    // nor the memory used grow with the number of products. the connection is held until the last row is sent
+    private ResponseEntity<StreamingResponseBody> streamAll(String accept) {
+        MediaType contentType = MediaType.APPLICATION_JSON;
+        ObjectMapper mapper = objectMapper;
+        for (MediaType acceptedType : accept == null ? List.<MediaType>of() : MediaType.parseMediaTypes(accept)) {
+            if (acceptedType.isWildcardType() || acceptedType.isWildcardSubtype()) {
+                continue;
+            }
+            if (acceptedType.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+                contentType = MediaType.APPLICATION_CBOR;
+                mapper = cborConverter.getObjectMapper();
+                break;
+            }
+            if (acceptedType.isCompatibleWith(SerializationConfig.APPLICATION_SMILE)) {
+                contentType = SerializationConfig.APPLICATION_SMILE;
+                mapper = smileConverter.getObjectMapper();
+                break;
+            }
+            if (acceptedType.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                break;
+            }
+        }
+        ObjectMapper streamMapper = mapper;
+        StreamingResponseBody body = outputStream -> {
+            // the writer must not flush after every product, the servlet output stream buffers the writes
+            ObjectWriter writer = streamMapper.writerFor(Product.class)
+                    .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+            try (JsonGenerator generator = streamMapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartArray();
+                productService.streamAll(product -> {
+                    try {
+                        writer.writeValue(generator, product);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(contentType)
+                .body(body);
+    }
+
     // create product in the database, return the ResponseEntity object
     @PostMapping("/product")
     public ResponseEntity<Product> createProduct (@RequestBody Product product) {
@@ -60,40 +351,117 @@ public class ProductController {
         }
     } // end of post method
 
+    // create many products in one request, the response reports the generated id of each product in request order
+    @PostMapping("/products/batch")
+    public ResponseEntity<List<BatchItemResult>> createProducts(@RequestBody List<Product> products) {
+        return ResponseEntity.ok(productService.saveAll(products));
+    } // end of batch post method
+
+    // the whole catalog as a download for analytics jobs, format=ndjson (the default), csv or columnar, see
+    // ProductExporter. written from the database cursor like GET /products, and gzipped by the server when the
+    // client accepts it
+    @GetMapping("/products/export")
+    public ResponseEntity<StreamingResponseBody> exportProducts(@RequestParam(defaultValue = "ndjson") String format) {
+        ProductExporter.Format exportFormat;
+        try {
+            exportFormat = ProductExporter.Format.of(format);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = outputStream -> productExporter.export(outputStream, exportFormat);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getMediaType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"products." + exportFormat.getExtension() + "\"")
+                .body(body);
+    } // end of export method
+
+    // create products from a csv file with a header line (Content-Type: text/csv) or from one product object
+    // per line (application/x-ndjson). the body is parsed while it is uploaded and saved in batches, see
+    // ProductImporter. the report counts the imported and rejected lines and says why each line was rejected
+    @PostMapping(value = "/products/import", consumes = {"text/csv", MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<?> importProducts(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                            InputStream body) throws IOException {
+        ProductImporter.Format format = MediaType.parseMediaType(contentType).isCompatibleWith(MediaType.APPLICATION_NDJSON)
+                ? ProductImporter.Format.NDJSON
+                : ProductImporter.Format.CSV;
+        ImportReport report;
+        try {
+            report = productImporter.importProducts(body, format);
+        } catch (IllegalArgumentException e) {
+            // the csv header is unusable, nothing was imported
+            return ResponseEntity.badRequest().body(ProblemDetail.forStatusAndDetail(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+        // the database failed part way, the products before the failure are kept
+        return ResponseEntity.status(report.isCompleted() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR).body(report);
+    } // end of import method
+
+    // modify many products in one request, products that do not exist are reported as not found
+    @PutMapping("/products/batch")
+    public ResponseEntity<List<BatchItemResult>> updateProducts(@RequestBody List<Product> products) {
+        return ResponseEntity.ok(productService.updateAll(products));
+    } // end of batch put method
+
+    // delete many products by id in one request, ids that do not exist are reported as not found
+    @DeleteMapping("/products/batch")
+    public ResponseEntity<List<BatchItemResult>> deleteProducts(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(productService.deleteAll(ids));
+    } // end of batch delete method
+
     // modify the product
     @PutMapping("/product/{id}")
     public ResponseEntity<?> updateProduct (@RequestBody Product product,
                                             @PathVariable Long id,
                                             @RequestHeader("iF-Match") Integer ifMatch) {
 
-        Optional<Product> existingProduct = productService.findbyId(id);
-        return existingProduct.map(
-                p -> {
-                    if(p.getVersion() != ifMatch ) { // check if the product version number matches the ifMatch
-                        return ResponseEntity.status(HttpStatus.CONFLICT).build();
-                    }
-                    // update the product
-                    p.setName(product.getName());
-                    p.setQuantity(product.getQuantity());
-                    p.setVersion(product.getVersion());
+        // the version check and the update are one statement, no read of the product is needed first
+        product.setId(id);
+        UpdateResult result = productService.updateIfVersion(product, ifMatch);
 
-                    try {
-                        if(productService.update(p)) { // if successful update of the product
-                            return ResponseEntity
-                                    .ok()
-                                    .location(new URI("/product/" + p.getId()))
-                                    .eTag(Integer.toString(p.getVersion()))
-                                    .body(p);
-                        } else { // if update of product not successful
-                            return ResponseEntity.notFound().build();
-                        }
-                    } catch (URISyntaxException e) { // if the syntax is not returned due to missing product id / product
-                        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
-                    }
-                })
-                .orElse(ResponseEntity.notFound().build());
+        if (result == UpdateResult.CONFLICT) { // the product version number does not match the ifMatch
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        if (result == UpdateResult.NOT_FOUND) {
+            return ResponseEntity.notFound().build();
+        }
+
+        try {
+            // the product now holds the increased version
+            return ResponseEntity
+                    .ok()
+                    .location(new URI("/product/" + product.getId()))
+                    .eTag(Integer.toString(product.getVersion()))
+                    .body(product);
+        } catch (URISyntaxException e) { // if the syntax is not returned due to missing product id / product
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
 
     } // end of put method
+    // add to or take from the stock of the product without reading it first and without an if-match. many
+    // clients can change the same product at once, none of them gets a conflict for changing it concurrently
+    @PatchMapping("/product/{id}/quantity")
+    // with write-behind on the change is only queued and 202 accepted is returned, see ProductWriteBehind
+    public ResponseEntity<?> updateQuantity(@PathVariable Long id, @RequestBody QuantityChange change) {
+        // a change of nothing would still bump the version and publish a change
+        if (change.getDelta() == null || change.getDelta() == 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (productService.queueQuantityChange(id, change.getDelta())) {
+            return ResponseEntity.accepted().build();
+        }
+        Optional<Product> updated = productService.adjustQuantity(id, change.getDelta());
+        if (updated.isPresent()) {
+            return ResponseEntity
+                    .ok()
+                    .eTag(Integer.toString(updated.get().getVersion()))
+                    .body(updated.get());
+        }
+        // only a failed change pays for a second query, to tell a missing product from too little stock
+        if (productService.findVersion(id).isPresent()) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
+        return ResponseEntity.notFound().build();
+    } // end of patch method
+
     // delete the product
     @DeleteMapping("/product/{id}")
     public ResponseEntity<?> deleteProduct(@PathVariable Long id) {
@@ -0,0 +1,98 @@
+package com.TDD.controller;
+
+import com.TDD.model.Product;
+import com.TDD.model.UpdateResult;
+import com.TDD.repository.ReactiveProductRepository;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+// reactive version of ProductController with the same routes, active with the reactive profile
+// every handler returns a Mono or Flux, so the event loop threads never wait for the database. the h2 statements
+// behind them still block a bounded elastic thread each while they run, see R2dbcProductRepository
+@RestController
+@Profile("reactive")
+public class ReactiveProductController {
+
+    // default and largest number of products returned in one page
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private final ReactiveProductRepository productRepository;
+
+    // constructor
+    public ReactiveProductController(ReactiveProductRepository productRepository) {
+        this.productRepository = productRepository;
+    }
+
+    // get the product based on the id
+    @GetMapping("/product/{id}")
+    public Mono<ResponseEntity<Product>> getProduct(@PathVariable Long id) {
+        return productRepository.findById(id)
+                .map(product -> ResponseEntity
+                        .ok()
+                        .eTag(Integer.toString(product.getVersion()))
+                        .location(URI.create("/product/" + product.getId()))
+                        .body(product))
+                .defaultIfEmpty(ResponseEntity.notFound().build()); // if the product does not exist return not found status
+    }
+
+    // get all products, or one page when after or limit is given. with Accept: application/x-ndjson every product
+    // is written as soon as it is read and the database is only asked for more rows as the client keeps up
+    @GetMapping(value = "/products", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Product> getProducts(@RequestParam(required = false) Long after,
+                                     @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return productRepository.findAll();
+        }
+        long cursor = after == null ? 0 : after;
+        int pageSize = limit == null ? DEFAULT_PAGE_SIZE : Math.min(Math.max(limit, 1), MAX_PAGE_SIZE);
+        return productRepository.findAfter(cursor, pageSize);
+    } // end of get method
+
+    // create product in the database
+    @PostMapping("/product")
+    public Mono<ResponseEntity<Product>> createProduct(@RequestBody Product product) {
+        return productRepository.save(product)
+                .map(newProduct -> ResponseEntity
+                        .created(URI.create("/product/" + newProduct.getId()))
+                        .eTag(Integer.toString(newProduct.getVersion()))
+                        .body(newProduct));
+    } // end of post method
+
+    // modify the product if its version matches the If-Match header
+    @PutMapping("/product/{id}")
+    public Mono<ResponseEntity<Product>> updateProduct(@RequestBody Product product,
+                                                       @PathVariable Long id,
+                                                       @RequestHeader(HttpHeaders.IF_MATCH) Integer ifMatch) {
+        product.setId(id);
+        return productRepository.updateIfVersion(product, ifMatch)
+                .map(result -> {
+                    if (result == UpdateResult.CONFLICT) {
+                        return ResponseEntity.status(HttpStatus.CONFLICT).<Product>build();
+                    }
+                    if (result == UpdateResult.NOT_FOUND) {
+                        return ResponseEntity.notFound().<Product>build();
+                    }
+                    return ResponseEntity
+                            .ok()
+                            .location(URI.create("/product/" + product.getId()))
+                            .eTag(Integer.toString(product.getVersion()))
+                            .body(product);
+                });
+    } // end of put method
+
+    // delete the product
+    @DeleteMapping("/product/{id}")
+    public Mono<ResponseEntity<Void>> deleteProduct(@PathVariable Long id) {
+        return productRepository.delete(id)
+                .map(deleted -> deleted ? ResponseEntity.ok().<Void>build() : ResponseEntity.notFound().<Void>build());
+    } // end of delete method
+}
@@ -0,0 +1,52 @@
+package com.TDD.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// outcome of one product in a batch request, index is the position of the product in the request
+public class BatchItemResult {
+
+    public enum Status {
+        FOUND,
+        CREATED,
+        UPDATED,
+        DELETED,
+        NOT_FOUND
+    }
+
+    private final int index;
+    private final long id;
+    private final Status status;
+    // the product a multi-get found, left out of the json otherwise
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Product product;
+
+    // constructor
+    public BatchItemResult(int index, long id, Status status) {
+        this(index, id, status, null);
+    }
+
+    public BatchItemResult(int index, long id, Status status, Product product) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.product = product;
+    }
+
+    // getters
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+}
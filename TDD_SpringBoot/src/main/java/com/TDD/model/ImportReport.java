@@ -0,0 +1,76 @@
+package com.TDD.model;
+
+import java.util.List;
+
+// outcome of a bulk import: how many lines were read, imported and rejected, the reason for each rejected line
+// up to product.import.max-errors of them, and how fast it went
+public class ImportReport {
+
+    private final long lines;
+    private final long imported;
+    private final long rejected;
+    // false when the import stopped early because the database refused a batch, the lines after it are not read
+    private final boolean completed;
+    private final long millis;
+    private final List<LineError> errors;
+
+    // constructor
+    public ImportReport(long lines, long imported, long rejected, boolean completed, long millis, List<LineError> errors) {
+        this.lines = lines;
+        this.imported = imported;
+        this.rejected = rejected;
+        this.completed = completed;
+        this.millis = millis;
+        this.errors = errors;
+    }
+
+    // getters
+
+    public long getLines() {
+        return lines;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public long getMillis() {
+        return millis;
+    }
+
+    // imported products per second
+    public long getRowsPerSecond() {
+        return millis == 0 ? imported * 1000 : imported * 1000 / millis;
+    }
+
+    public List<LineError> getErrors() {
+        return errors;
+    }
+
+    // a line that was not imported, line numbers start at 1 and count the header of a csv file
+    public static class LineError {
+        private final long line;
+        private final String message;
+
+        public LineError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
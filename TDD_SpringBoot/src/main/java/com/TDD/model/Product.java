@@ -2,10 +2,15 @@ package com.TDD.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-import javax.persistence.*;
+import jakarta.persistence.*;
 import java.io.Serializable;
 
 @Entity
+// indexes for the name and quantity filters and sorts of GET /products, hibernate creates them with the table
+@Table(indexes = {
+        @Index(name = "product_name_idx", columnList = "name"),
+        @Index(name = "product_quantity_idx", columnList = "quantity")
+})
 public class Product implements Serializable {
 
     // properties
@@ -0,0 +1,45 @@
+package com.TDD.model;
+
+// one create, update or delete of a product in the change feed. sequence numbers increase with every change,
+// a client resumes the feed after the last sequence it has seen
+public class ProductChange {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final long id;
+    // the product after the change. null for a delete, and for a quantity change written by the write-behind
+    // buffer, which does not read the row back
+    private final Product product;
+
+    // constructor
+    public ProductChange(long sequence, Type type, long id, Product product) {
+        this.sequence = sequence;
+        this.type = type;
+        this.id = id;
+        this.product = product;
+    }
+
+    // getters
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Product getProduct() {
+        return product;
+    }
+}
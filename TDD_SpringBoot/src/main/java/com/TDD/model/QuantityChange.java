@@ -0,0 +1,26 @@
+package com.TDD.model;
+
+// body of PATCH /product/{id}/quantity, the amount to add to the stock. negative to take stock away.
+// null when the body has no delta
+public class QuantityChange {
+
+    private Integer delta;
+
+    // constructors
+    public QuantityChange() {
+    }
+
+    public QuantityChange(Integer delta) {
+        this.delta = delta;
+    }
+
+    // getter and setter
+
+    public Integer getDelta() {
+        return delta;
+    }
+
+    public void setDelta(Integer delta) {
+        this.delta = delta;
+    }
+}
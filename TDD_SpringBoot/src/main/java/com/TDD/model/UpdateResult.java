@@ -0,0 +1,11 @@
+package com.TDD.model;
+
+// outcome of a version checked update
+public enum UpdateResult {
+    // the product had the expected version and was updated
+    UPDATED,
+    // no product with the id exists
+    NOT_FOUND,
+    // the product exists but its version did not match
+    CONFLICT
+}
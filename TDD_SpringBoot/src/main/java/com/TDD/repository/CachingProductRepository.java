@@ -0,0 +1,252 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+import com.TDD.model.ProductQuery;
+import com.TDD.model.UpdateResult;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// read-through cache in front of the jdbc repository, switched on with product.cache.enabled
+// single products are cached by id, and multi-gets by id read the cached ones and load the rest in one go.
+// list queries always go to the database
+@Primary
+@Component
+@ConditionalOnProperty(name = "product.cache.enabled", havingValue = "true")
+public class CachingProductRepository implements ProductRepository, MeterBinder {
+
+    private final ProductRepository productRepository;
+    private final Cache<Long, Product> cache;
+    // counts the invalidations, a multi-get checks it to find out whether one ran while it was loading
+    private final AtomicLong invalidations = new AtomicLong();
+
+    // constructor
+    public CachingProductRepository(@Qualifier("productRepositoryImpl") ProductRepository productRepository,
+                                    @Value("${product.cache.maximum-size:100000}") long maximumSize,
+                                    @Value("${product.cache.expire-after-write:10m}") Duration expireAfterWrite) {
+        this.productRepository = productRepository;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Optional<Product> findById(long id) {
+        // the load runs atomically for the id, so an invalidation that races with it waits and then removes
+        // the loaded row instead of being overwritten by it. products that do not exist are not cached.
+        Product product = cache.get(id, key -> productRepository.findById(key).map(CachingProductRepository::copyOf).orElse(null));
+        // callers are free to modify the product they get back, so never hand out the cached instance
+        return Optional.ofNullable(product).map(CachingProductRepository::copyOf);
+    } // end of find by id method
+
+    @Override
+    public List<Product> findAllByIds(Collection<Long> ids) {
+        Map<Long, Product> cached = cache.getAllPresent(ids);
+        List<Product> products = new ArrayList<>(cached.size());
+        cached.values().forEach(product -> products.add(copyOf(product)));
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            if (!cached.containsKey(id)) {
+                missing.add(id);
+            }
+        }
+        if (missing.isEmpty()) {
+            return products;
+        }
+
+        // the misses are loaded with one query instead of a findById each. unlike findById the load is not
+        // atomic per id, so an invalidation that runs meanwhile could be overwritten by the row read before it.
+        // the loaded rows are put first and the counter checked after: if an invalidation started in between,
+        // the rows this load put are taken out again, otherwise every later invalidation removes them anyway
+        long invalidationsBefore = invalidations.get();
+        List<Product> loaded = productRepository.findAllByIds(missing);
+        List<Product> added = new ArrayList<>(loaded.size());
+        for (Product product : loaded) {
+            Product entry = copyOf(product);
+            if (cache.asMap().putIfAbsent(entry.getId(), entry) == null) {
+                added.add(entry);
+            }
+            products.add(product);
+        }
+        if (invalidations.get() != invalidationsBefore) {
+            added.forEach(entry -> cache.asMap().remove(entry.getId(), entry));
+        }
+        return products;
+    } // end of find all by ids method
+
+    @Override
+    public Optional<Integer> findVersion(long id) {
+        // a cached product already knows its version, otherwise only the version is read and nothing is cached
+        Product product = cache.getIfPresent(id);
+        if (product != null) {
+            return Optional.of(product.getVersion());
+        }
+        return productRepository.findVersion(id);
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return productRepository.findAll();
+    }
+
+    @Override
+    public List<Product> findAll(ProductQuery query) {
+        return productRepository.findAll(query);
+    }
+
+    @Override
+    public List<Map<String, Object>> findAll(ProductQuery query, List<String> fields) {
+        return productRepository.findAll(query, fields);
+    }
+
+    @Override
+    public List<Product> findAfter(long afterId, int limit) {
+        return productRepository.findAfter(afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<Product> consumer) {
+        productRepository.streamAll(consumer);
+    }
+
+    @Override
+    public boolean update(Product product) {
+        // the update writes whatever version it is given, lower ones too, so the written product cannot be merged
+        // into the cache by version. it is read again on the next findById
+        boolean updated = productRepository.update(product);
+        invalidate(product.getId());
+        return updated;
+    }
+
+    @Override
+    public UpdateResult updateIfVersion(Product product, int expectedVersion) {
+        UpdateResult result = productRepository.updateIfVersion(product, expectedVersion);
+        if (result == UpdateResult.UPDATED) {
+            cacheWritten(product);
+        } else {
+            // a version conflict means the cached product may be out of date
+            invalidate(product.getId());
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<Product> adjustQuantity(long id, int delta) {
+        Optional<Product> updated = productRepository.adjustQuantity(id, delta);
+        if (updated.isPresent()) {
+            cacheWritten(updated.get());
+        } else {
+            invalidate(id);
+        }
+        return updated;
+    }
+
+    @Override
+    public Product save(Product product) {
+        Product savedProduct = productRepository.save(product);
+        cacheWritten(savedProduct);
+        return savedProduct;
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        boolean deleted = productRepository.delete(id);
+        invalidate(id);
+        return deleted;
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        // new products are not cached: a batch of them, like a bulk import, would push the products being read out
+        // of the cache, and each is loaded on its first read anyway
+        return productRepository.saveAll(products);
+    }
+
+    @Override
+    public int[] updateAll(List<Product> products) {
+        // like update, the batch writes the versions it is given, so the products are read again instead of cached
+        int[] counts = productRepository.updateAll(products);
+        List<Long> ids = new ArrayList<>(products.size());
+        products.forEach(product -> ids.add(product.getId()));
+        invalidateAll(ids);
+        return counts;
+    }
+
+    @Override
+    public int[] deleteAll(List<Long> ids) {
+        int[] counts = productRepository.deleteAll(ids);
+        invalidateAll(ids);
+        return counts;
+    }
+
+    @Override
+    public int[] adjustQuantityAll(Map<Long, Long> deltas) {
+        int[] counts = productRepository.adjustQuantityAll(deltas);
+        // the new quantities are not returned, read them again when they are asked for
+        invalidateAll(deltas.keySet());
+        return counts;
+    }
+
+    @Override
+    public long count() {
+        return productRepository.count();
+    }
+
+    // publish the hit, miss and eviction counters and the size of the cache as product cache metrics
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, cache, "product");
+    }
+
+    // hit, miss and eviction counters of the cache
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    // number of products currently held in the cache
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    // put a product that was just written to the database into the cache. when two writes to the same product
+    // race, the entry with the newer version wins, so a slower older write cannot replace a newer one. only for
+    // writes that move the version up, like the compare-and-set update and the quantity change
+    private void cacheWritten(Product product) {
+        Product written = copyOf(product);
+        cache.asMap().merge(written.getId(), written,
+                (cached, latest) -> cached.getVersion() > latest.getVersion() ? cached : latest);
+    }
+
+    private void invalidate(long id) {
+        invalidations.incrementAndGet();
+        cache.invalidate(id);
+    }
+
+    private void invalidateAll(Collection<Long> ids) {
+        invalidations.incrementAndGet();
+        cache.invalidateAll(ids);
+    }
+
+    private static Product copyOf(Product product) {
+        return new Product(product.getId(), product.getName(), product.getQuantity(), product.getVersion());
+    }
+}
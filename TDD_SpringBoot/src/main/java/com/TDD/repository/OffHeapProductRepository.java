@@ -0,0 +1,262 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+import com.TDD.model.ProductQuery;
+import com.TDD.model.UpdateResult;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// the whole catalog in an OffHeapProductStore, for read heavy nodes. started with the "offheap" profile, which
+// also switches the product cache off. the store is loaded from the database at startup; reads by id and the
+// count are answered from it, list queries still go to the database. writes go to the database first and are
+// then applied to the store, under a lock per id so two writes to one product reach the store in the order
+// the database made them
+@Primary
+@Component
+@Profile("offheap")
+public class OffHeapProductRepository implements ProductRepository, SmartInitializingSingleton, MeterBinder {
+
+    // number of write locks, the ids are spread over them
+    private static final int WRITE_LOCKS = 64;
+
+    private final ProductRepository productRepository;
+    private final OffHeapProductStore store;
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_LOCKS];
+
+    // constructor
+    public OffHeapProductRepository(@Qualifier("productRepositoryImpl") ProductRepository productRepository,
+                                    @Value("${product.offheap.expected-products:1000000}") int expectedProducts) {
+        this.productRepository = productRepository;
+        this.store = new OffHeapProductStore(expectedProducts);
+        for (int i = 0; i < WRITE_LOCKS; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    // load the store once all beans exist, so hibernate has created the table, and before the web server starts
+    @Override
+    public void afterSingletonsInstantiated() {
+        productRepository.streamAll(store::put);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("product.offheap.products", store, OffHeapProductStore::size)
+                .description("Products held in the off-heap store")
+                .baseUnit("products")
+                .register(registry);
+        Gauge.builder("product.offheap.memory", store, OffHeapProductStore::offHeapBytes)
+                .description("Direct memory held by the off-heap product store")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    @Override
+    public Optional<Product> findById(long id) {
+        return Optional.ofNullable(store.get(id));
+    }
+
+    @Override
+    public List<Product> findAllByIds(Collection<Long> ids) {
+        List<Product> products = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Product product = store.get(id);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    @Override
+    public Optional<Integer> findVersion(long id) {
+        int version = store.version(id);
+        return version < 0 ? Optional.empty() : Optional.of(version);
+    }
+
+    @Override
+    public List<Product> findAll() {
+        return productRepository.findAll();
+    }
+
+    @Override
+    public List<Product> findAll(ProductQuery query) {
+        return productRepository.findAll(query);
+    }
+
+    @Override
+    public List<Map<String, Object>> findAll(ProductQuery query, List<String> fields) {
+        return productRepository.findAll(query, fields);
+    }
+
+    @Override
+    public List<Product> findAfter(long afterId, int limit) {
+        return productRepository.findAfter(afterId, limit);
+    }
+
+    @Override
+    public void streamAll(Consumer<Product> consumer) {
+        productRepository.streamAll(consumer);
+    }
+
+    @Override
+    public boolean update(Product product) {
+        return locked(product.getId(), () -> {
+            boolean updated = productRepository.update(product);
+            if (updated) {
+                store.put(product);
+            } else {
+                store.remove(product.getId());
+            }
+            return updated;
+        });
+    }
+
+    @Override
+    public UpdateResult updateIfVersion(Product product, int expectedVersion) {
+        return locked(product.getId(), () -> {
+            UpdateResult result = productRepository.updateIfVersion(product, expectedVersion);
+            if (result == UpdateResult.UPDATED) {
+                store.put(product);
+            } else if (result == UpdateResult.NOT_FOUND) {
+                store.remove(product.getId());
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public Optional<Product> adjustQuantity(long id, int delta) {
+        return locked(id, () -> {
+            // nothing changed when the product is missing or the quantity would leave its range
+            Optional<Product> updated = productRepository.adjustQuantity(id, delta);
+            updated.ifPresent(store::put);
+            return updated;
+        });
+    }
+
+    @Override
+    public Product save(Product product) {
+        Product savedProduct = productRepository.save(product);
+        store.put(savedProduct);
+        return savedProduct;
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        return locked(id, () -> {
+            boolean deleted = productRepository.delete(id);
+            store.remove(id);
+            return deleted;
+        });
+    }
+
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        List<Product> savedProducts = productRepository.saveAll(products);
+        savedProducts.forEach(store::put);
+        return savedProducts;
+    }
+
+    @Override
+    public int[] updateAll(List<Product> products) {
+        List<Long> ids = new ArrayList<>(products.size());
+        products.forEach(product -> ids.add(product.getId()));
+        return locked(ids, () -> {
+            int[] counts = productRepository.updateAll(products);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 1) {
+                    store.put(products.get(i));
+                } else {
+                    store.remove(products.get(i).getId());
+                }
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public int[] deleteAll(List<Long> ids) {
+        return locked(ids, () -> {
+            int[] counts = productRepository.deleteAll(ids);
+            ids.forEach(store::remove);
+            return counts;
+        });
+    }
+
+    @Override
+    public int[] adjustQuantityAll(Map<Long, Long> deltas) {
+        return locked(deltas.keySet(), () -> {
+            int[] counts = productRepository.adjustQuantityAll(deltas);
+            // the new quantities are not returned by the batch, read the changed products back in one go
+            List<Long> changed = new ArrayList<>();
+            int i = 0;
+            for (Long id : deltas.keySet()) {
+                if (counts[i++] != 0) {
+                    changed.add(id);
+                }
+            }
+            productRepository.findAllByIds(changed).forEach(store::put);
+            return counts;
+        });
+    }
+
+    @Override
+    public long count() {
+        return store.size();
+    }
+
+    // the store itself, for the benchmarks
+    public OffHeapProductStore store() {
+        return store;
+    }
+
+    private <T> T locked(long id, Supplier<T> write) {
+        ReentrantLock writeLock = writeLocks[(int) Math.floorMod(id, (long) WRITE_LOCKS)];
+        writeLock.lock();
+        try {
+            return write.get();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // the locks of all the ids, always taken in the same order so two batches cannot deadlock
+    private <T> T locked(Collection<Long> ids, Supplier<T> write) {
+        boolean[] needed = new boolean[WRITE_LOCKS];
+        for (Long id : ids) {
+            needed[(int) Math.floorMod(id, (long) WRITE_LOCKS)] = true;
+        }
+        int taken = 0;
+        try {
+            for (; taken < WRITE_LOCKS; taken++) {
+                if (needed[taken]) {
+                    writeLocks[taken].lock();
+                }
+            }
+            return write.get();
+        } finally {
+            for (int i = 0; i < taken; i++) {
+                if (needed[i]) {
+                    writeLocks[i].unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// products kept outside the java heap in direct byte buffers, so millions of them cost the garbage collector
+// nothing to trace. three areas:
+//   records  fixed size rows of id, quantity, version and a reference to the name, in chunks of 1M rows
+//   index    open addressing hash table from id to record slot, linear probing over two primitive arrays
+//   names    utf-8 bytes appended to 16MB chunks. equal names are stored once, found through a second hash table
+// a name that is replaced stays in the name area until the store is built again, at the next start.
+// ids must be greater than 0, 0 marks a free index entry. direct memory counts against -XX:MaxDirectMemorySize,
+// which defaults to the maximum heap size
+public class OffHeapProductStore {
+
+    // id 8 bytes, quantity 4, version 4, name reference 8
+    private static final int RECORD_BYTES = 24;
+    private static final int QUANTITY_OFFSET = 8;
+    private static final int VERSION_OFFSET = 12;
+    private static final int NAME_OFFSET = 16;
+    private static final int RECORDS_PER_CHUNK_BITS = 20;
+    private static final int RECORDS_PER_CHUNK = 1 << RECORDS_PER_CHUNK_BITS;
+    private static final int NAME_CHUNK_BYTES = 1 << 24;
+    // a name reference is the offset of the name in the name area shifted left 16 bits, or-ed with its length
+    private static final int NAME_LENGTH_BITS = 16;
+    private static final int NULL_NAME_LENGTH = (1 << NAME_LENGTH_BITS) - 1;
+    // the hash tables grow when they are this full, linear probing slows down quickly above it
+    private static final double MAX_LOAD = 0.6;
+    // largest hash table, the ids of one table have to fit in a single direct buffer
+    private static final int MAX_TABLE_CAPACITY = 1 << 27;
+
+    private final List<ByteBuffer> recordChunks = new ArrayList<>();
+    private int recordSlots;
+    private int[] freeRecords = new int[16];
+    private int freeRecordCount;
+
+    private LongBuffer indexIds;
+    private IntBuffer indexSlots;
+    private int indexMask;
+    private int size;
+
+    private final List<ByteBuffer> nameChunks = new ArrayList<>();
+    // offset 0 is never used, so no name reference is 0 and 0 can mark a free name index entry
+    private long nameEnd = 1;
+    private LongBuffer nameIndex;
+    private int nameIndexMask;
+    private int nameCount;
+
+    // many reads can run at once, a write waits for them and blocks them while it changes the store
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // constructor, sized for the expected number of products so loading does not have to grow the tables
+    public OffHeapProductStore(int expectedProducts) {
+        int capacity = tableCapacity(expectedProducts);
+        indexIds = longs(capacity);
+        indexSlots = ints(capacity);
+        indexMask = capacity - 1;
+        nameIndex = longs(capacity);
+        nameIndexMask = capacity - 1;
+    }
+
+    // add the product or replace the stored one with the same id
+    public void put(Product product) {
+        long id = product.getId();
+        if (id <= 0) {
+            throw new IllegalArgumentException("Product id must be greater than 0: " + id);
+        }
+        byte[] name = product.getName() == null ? null : product.getName().getBytes(StandardCharsets.UTF_8);
+        if (name != null && name.length >= NULL_NAME_LENGTH) {
+            throw new IllegalArgumentException("Product name is too long: " + name.length + " bytes");
+        }
+        lock.writeLock().lock();
+        try {
+            int slot = findSlot(id);
+            if (slot < 0) {
+                if (size + 1 > (indexMask + 1) * MAX_LOAD) {
+                    growIndex();
+                }
+                slot = newRecord();
+                insertIndex(id, slot);
+                size++;
+            }
+            ByteBuffer chunk = recordChunks.get(slot >>> RECORDS_PER_CHUNK_BITS);
+            int position = (slot & (RECORDS_PER_CHUNK - 1)) * RECORD_BYTES;
+            chunk.putLong(position, id);
+            chunk.putInt(position + QUANTITY_OFFSET, product.getQuantity());
+            chunk.putInt(position + VERSION_OFFSET, product.getVersion());
+            chunk.putLong(position + NAME_OFFSET, name == null ? NULL_NAME_LENGTH : internName(name));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // a new product object with the stored values, null when there is no product with the id
+    public Product get(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(id);
+            if (slot < 0) {
+                return null;
+            }
+            ByteBuffer chunk = recordChunks.get(slot >>> RECORDS_PER_CHUNK_BITS);
+            int position = (slot & (RECORDS_PER_CHUNK - 1)) * RECORD_BYTES;
+            return new Product(id,
+                    readName(chunk.getLong(position + NAME_OFFSET)),
+                    chunk.getInt(position + QUANTITY_OFFSET),
+                    chunk.getInt(position + VERSION_OFFSET));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // the version of the product, -1 when there is no product with the id
+    public int version(long id) {
+        lock.readLock().lock();
+        try {
+            int slot = findSlot(id);
+            if (slot < 0) {
+                return -1;
+            }
+            return recordChunks.get(slot >>> RECORDS_PER_CHUNK_BITS)
+                    .getInt((slot & (RECORDS_PER_CHUNK - 1)) * RECORD_BYTES + VERSION_OFFSET);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            int position = indexPosition(id);
+            if (position < 0) {
+                return false;
+            }
+            int slot = indexSlots.get(position);
+            removeIndex(position);
+            size--;
+            if (freeRecordCount == freeRecords.length) {
+                freeRecords = Arrays.copyOf(freeRecords, freeRecordCount * 2);
+            }
+            freeRecords[freeRecordCount++] = slot;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // number of stored products
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // number of distinct names in the name area
+    public int nameCount() {
+        lock.readLock().lock();
+        try {
+            return nameCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // direct memory held by the store
+    public long offHeapBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) recordChunks.size() * RECORDS_PER_CHUNK * RECORD_BYTES;
+            bytes += (long) nameChunks.size() * NAME_CHUNK_BYTES;
+            bytes += (indexMask + 1L) * (Long.BYTES + Integer.BYTES);
+            bytes += (nameIndexMask + 1L) * Long.BYTES;
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int findSlot(long id) {
+        int position = indexPosition(id);
+        return position < 0 ? -1 : indexSlots.get(position);
+    }
+
+    // position of the id in the index, -1 when it is not there
+    private int indexPosition(long id) {
+        int position = hash(id) & indexMask;
+        while (true) {
+            long stored = indexIds.get(position);
+            if (stored == id) {
+                return position;
+            }
+            if (stored == 0) {
+                return -1;
+            }
+            position = (position + 1) & indexMask;
+        }
+    }
+
+    private void insertIndex(long id, int slot) {
+        int position = hash(id) & indexMask;
+        while (indexIds.get(position) != 0) {
+            position = (position + 1) & indexMask;
+        }
+        indexIds.put(position, id);
+        indexSlots.put(position, slot);
+    }
+
+    // linear probing has no tombstones: the entries after the removed one move back into the gap when the
+    // gap lies between their home position and where they are now
+    private void removeIndex(int position) {
+        int gap = position;
+        int next = position;
+        while (true) {
+            next = (next + 1) & indexMask;
+            long id = indexIds.get(next);
+            if (id == 0) {
+                break;
+            }
+            int home = hash(id) & indexMask;
+            boolean movable = gap <= next ? home <= gap || home > next : home <= gap && home > next;
+            if (movable) {
+                indexIds.put(gap, id);
+                indexSlots.put(gap, indexSlots.get(next));
+                gap = next;
+            }
+        }
+        indexIds.put(gap, 0);
+    }
+
+    private void growIndex() {
+        if (indexMask + 1 == MAX_TABLE_CAPACITY) {
+            throw new IllegalStateException("Off-heap product store is full at " + size + " products");
+        }
+        LongBuffer oldIds = indexIds;
+        IntBuffer oldSlots = indexSlots;
+        int capacity = (indexMask + 1) * 2;
+        indexIds = longs(capacity);
+        indexSlots = ints(capacity);
+        indexMask = capacity - 1;
+        for (int i = 0; i < oldIds.capacity(); i++) {
+            long id = oldIds.get(i);
+            if (id != 0) {
+                insertIndex(id, oldSlots.get(i));
+            }
+        }
+    }
+
+    private int newRecord() {
+        if (freeRecordCount > 0) {
+            return freeRecords[--freeRecordCount];
+        }
+        if (recordSlots == recordChunks.size() * RECORDS_PER_CHUNK) {
+            recordChunks.add(ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_BYTES).order(ByteOrder.nativeOrder()));
+        }
+        return recordSlots++;
+    }
+
+    // the reference of an equal name already in the name area, or of the name appended to it
+    private long internName(byte[] name) {
+        int position = nameHash(name) & nameIndexMask;
+        while (true) {
+            long reference = nameIndex.get(position);
+            if (reference == 0) {
+                break;
+            }
+            if (nameEquals(reference, name)) {
+                return reference;
+            }
+            position = (position + 1) & nameIndexMask;
+        }
+        long reference = appendName(name);
+        nameIndex.put(position, reference);
+        nameCount++;
+        if (nameCount > (nameIndexMask + 1) * MAX_LOAD && nameIndexMask + 1 < MAX_TABLE_CAPACITY) {
+            growNameIndex();
+        }
+        return reference;
+    }
+
+    private long appendName(byte[] name) {
+        // a name never spans two chunks, the rest of a chunk that is too short for it stays unused
+        int offsetInChunk = (int) (nameEnd % NAME_CHUNK_BYTES);
+        if (nameEnd / NAME_CHUNK_BYTES >= nameChunks.size() || offsetInChunk + name.length > NAME_CHUNK_BYTES) {
+            nameChunks.add(ByteBuffer.allocateDirect(NAME_CHUNK_BYTES));
+            nameEnd = Math.max(1, (long) (nameChunks.size() - 1) * NAME_CHUNK_BYTES);
+            offsetInChunk = (int) (nameEnd % NAME_CHUNK_BYTES);
+        }
+        nameChunks.get(nameChunks.size() - 1).put(offsetInChunk, name);
+        long reference = (nameEnd << NAME_LENGTH_BITS) | name.length;
+        nameEnd += name.length;
+        return reference;
+    }
+
+    private void growNameIndex() {
+        LongBuffer oldIndex = nameIndex;
+        int capacity = (nameIndexMask + 1) * 2;
+        nameIndex = longs(capacity);
+        nameIndexMask = capacity - 1;
+        for (int i = 0; i < oldIndex.capacity(); i++) {
+            long reference = oldIndex.get(i);
+            if (reference != 0) {
+                int position = nameHash(nameBytes(reference)) & nameIndexMask;
+                while (nameIndex.get(position) != 0) {
+                    position = (position + 1) & nameIndexMask;
+                }
+                nameIndex.put(position, reference);
+            }
+        }
+    }
+
+    private boolean nameEquals(long reference, byte[] name) {
+        int length = (int) (reference & NULL_NAME_LENGTH);
+        if (length != name.length) {
+            return false;
+        }
+        long offset = reference >>> NAME_LENGTH_BITS;
+        ByteBuffer chunk = nameChunks.get((int) (offset / NAME_CHUNK_BYTES));
+        int start = (int) (offset % NAME_CHUNK_BYTES);
+        for (int i = 0; i < length; i++) {
+            if (chunk.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readName(long reference) {
+        if (reference == NULL_NAME_LENGTH) {
+            return null;
+        }
+        return new String(nameBytes(reference), StandardCharsets.UTF_8);
+    }
+
+    private byte[] nameBytes(long reference) {
+        long offset = reference >>> NAME_LENGTH_BITS;
+        byte[] bytes = new byte[(int) (reference & NULL_NAME_LENGTH)];
+        nameChunks.get((int) (offset / NAME_CHUNK_BYTES)).get((int) (offset % NAME_CHUNK_BYTES), bytes);
+        return bytes;
+    }
+
+    // ids are mostly consecutive, the multiply spreads them over the whole table
+    private static int hash(long id) {
+        long mixed = id * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    private static int nameHash(byte[] name) {
+        return hash(Arrays.hashCode(name));
+    }
+
+    private static int tableCapacity(int expected) {
+        int needed = (int) Math.min(MAX_TABLE_CAPACITY, Math.max(16, (long) Math.ceil(expected / MAX_LOAD)));
+        return Integer.highestOneBit(needed - 1) << 1;
+    }
+
+    private static LongBuffer longs(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    private static IntBuffer ints(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+}
@@ -0,0 +1,263 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// append-only log of product writes, in segment files of about segment-size bytes. a position is the byte offset
+// of a record counted over all segments, and every segment is named after the position of its first record, so
+// positions keep growing when old segments are deleted. a record, every number big-endian:
+//   body length (4), crc32c of the body (4), body: type (1), id (8), and for a put quantity (4), version (4),
+//   name length in bytes (4, -1 for no name), utf-8 name
+// a put holds the whole product as it is after the write, so applying the records in order gives the same
+// products however often a record is applied
+public class ProductLogFile {
+
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int NULL_NAME = -1;
+    private static final String SUFFIX = ".log";
+
+    private final Path directory;
+    private final long segmentSize;
+
+    // the segment appended to, and the positions of its first byte and of the end of the last record
+    private FileChannel channel;
+    private long segmentStart;
+    private volatile long position;
+    private ByteBuffer buffer = ByteBuffer.allocate(256);
+    private final CRC32C crc = new CRC32C();
+
+    // constructor
+    public ProductLogFile(Path directory, long segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    // what the records are applied to while reading the log
+    public interface Replay {
+        void put(Product product);
+
+        void delete(long id);
+    }
+
+    // hand the records from the position on to the replay and open the log for appending after the last one.
+    // a record cut short or damaged at the end of the last segment was being written when the process died, it
+    // was never confirmed and is cut off. damage anywhere else fails, the records after it would be lost.
+    // returns the number of records read
+    public synchronized long open(long from, Replay replay) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> starts = segmentStarts();
+        long[] records = {0};
+        long end = from;
+        for (int i = 0; i < starts.size(); i++) {
+            long start = starts.get(i);
+            long next = i + 1 < starts.size() ? starts.get(i + 1) : Long.MAX_VALUE;
+            if (next <= from) {
+                continue;
+            }
+            try (FileChannel segment = FileChannel.open(segmentPath(start), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long valid = read(segment, start, Math.max(from, start), replay, records);
+                if (valid < segment.size()) {
+                    if (i + 1 < starts.size()) {
+                        throw new IOException("Log segment " + segmentPath(start) + " is damaged at position " + (start + valid));
+                    }
+                    segment.truncate(valid);
+                    segment.force(true);
+                }
+                end = Math.max(end, start + valid);
+            }
+        }
+
+        long last = starts.isEmpty() ? -1 : starts.get(starts.size() - 1);
+        if (last >= 0 && last + Files.size(segmentPath(last)) == end) {
+            segmentStart = last;
+            channel = FileChannel.open(segmentPath(segmentStart), StandardOpenOption.WRITE);
+            channel.position(end - segmentStart);
+        } else {
+            // no segment ends where appending goes on, the log is new or all of it is older than the position
+            newSegment(end);
+        }
+        position = end;
+        return records[0];
+    }
+
+    // read the records of one segment from the position on and count them, returns the length of the segment
+    // up to the end of the last good record
+    private long read(FileChannel segment, long start, long from, Replay replay, long[] records) throws IOException {
+        // segments are at most segment-size and a little, one mapping holds a whole segment
+        ByteBuffer mapped = segment.map(FileChannel.MapMode.READ_ONLY, 0, segment.size());
+        int offset = (int) (from - start);
+        while (mapped.limit() - offset >= RECORD_HEADER_SIZE) {
+            int length = mapped.getInt(offset);
+            int checksum = mapped.getInt(offset + 4);
+            if (length <= 0 || length > mapped.limit() - offset - RECORD_HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer body = mapped.slice(offset + RECORD_HEADER_SIZE, length);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            apply(body, replay);
+            records[0]++;
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        return offset;
+    }
+
+    private static void apply(ByteBuffer body, Replay replay) {
+        byte type = body.get();
+        long id = body.getLong();
+        if (type == DELETE) {
+            replay.delete(id);
+            return;
+        }
+        int quantity = body.getInt();
+        int version = body.getInt();
+        int nameLength = body.getInt();
+        String name = null;
+        if (nameLength != NULL_NAME) {
+            byte[] bytes = new byte[nameLength];
+            body.get(bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+        }
+        replay.put(new Product(id, name, quantity, version));
+    }
+
+    // append the product as it is now, returns the position after the record
+    public synchronized long put(Product product) throws IOException {
+        byte[] name = product.getName() == null ? null : product.getName().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = body(1 + 8 + 12 + (name == null ? 0 : name.length));
+        body.put(PUT)
+                .putLong(product.getId())
+                .putInt(product.getQuantity())
+                .putInt(product.getVersion())
+                .putInt(name == null ? NULL_NAME : name.length);
+        if (name != null) {
+            body.put(name);
+        }
+        return append();
+    }
+
+    // append the delete of the product, returns the position after the record
+    public synchronized long delete(long id) throws IOException {
+        body(1 + 8).put(DELETE).putLong(id);
+        return append();
+    }
+
+    // position after the last record appended
+    public long position() {
+        return position;
+    }
+
+    // write everything appended so far to the disk, returns the position it reaches. appends go on meanwhile
+    public long sync() throws IOException {
+        FileChannel syncChannel;
+        long syncPosition;
+        synchronized (this) {
+            syncChannel = channel;
+            syncPosition = position;
+        }
+        try {
+            syncChannel.force(false);
+        } catch (ClosedChannelException e) {
+            // the segment was finished meanwhile, which syncs it
+        }
+        return syncPosition;
+    }
+
+    // delete the segments that only hold records before the position. the segment appended to is kept
+    public synchronized void deleteBefore(long before) throws IOException {
+        List<Long> starts = segmentStarts();
+        for (int i = 0; i + 1 < starts.size(); i++) {
+            if (starts.get(i + 1) <= before) {
+                Files.deleteIfExists(segmentPath(starts.get(i)));
+            }
+        }
+    }
+
+    // bytes in all segments
+    public long size() throws IOException {
+        long size = 0;
+        for (long start : segmentStarts()) {
+            size += Files.size(segmentPath(start));
+        }
+        return size;
+    }
+
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    // an empty body of the length, the record header is filled in by append
+    private ByteBuffer body(int length) {
+        if (buffer.capacity() < RECORD_HEADER_SIZE + length) {
+            buffer = ByteBuffer.allocate(Integer.highestOneBit(RECORD_HEADER_SIZE + length) << 1);
+        }
+        buffer.clear();
+        buffer.position(RECORD_HEADER_SIZE);
+        return buffer;
+    }
+
+    private long append() throws IOException {
+        int length = buffer.position() - RECORD_HEADER_SIZE;
+        crc.reset();
+        crc.update(buffer.array(), RECORD_HEADER_SIZE, length);
+        buffer.putInt(0, length).putInt(4, (int) crc.getValue());
+        buffer.flip();
+        if (position > segmentStart && position - segmentStart + buffer.remaining() > segmentSize) {
+            // the full segment is synced and closed, appending goes on in a new one
+            channel.force(false);
+            channel.close();
+            newSegment(position);
+        }
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            // a record written in part would be taken for damage in the middle of the log, cut it off
+            channel.truncate(position - segmentStart);
+            throw e;
+        }
+        position += RECORD_HEADER_SIZE + length;
+        return position;
+    }
+
+    private void newSegment(long start) throws IOException {
+        channel = FileChannel.open(segmentPath(start), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        segmentStart = start;
+    }
+
+    private Path segmentPath(long start) {
+        return directory.resolve(String.format("%020d", start) + SUFFIX);
+    }
+
+    private List<Long> segmentStarts() throws IOException {
+        List<Long> starts = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .forEach(name -> starts.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length()))));
+        }
+        starts.sort(null);
+        return starts;
+    }
+}
@@ -1,16 +1,34 @@
 package com.TDD.repository;
 
 import com.TDD.model.Product;
+import com.TDD.model.ProductQuery;
+import com.TDD.model.UpdateResult;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 @Repository
 public interface ProductRepository {
 
     public Optional<Product> findById(long id);
+    public List<Product> findAllByIds(Collection<Long> ids);
+    public Optional<Integer> findVersion(long id);
     public List<Product> findAll();
+    public List<Product> findAll(ProductQuery query);
+    public List<Map<String, Object>> findAll(ProductQuery query, List<String> fields);
+    public List<Product> findAfter(long afterId, int limit);
+    public void streamAll(Consumer<Product> consumer);
     public boolean update(Product product);
+    public UpdateResult updateIfVersion(Product product, int expectedVersion);
+    public Optional<Product> adjustQuantity(long id, int delta);
     public Product save(Product product);
     public boolean delete(Long id);
+    public List<Product> saveAll(List<Product> products);
+    public int[] updateAll(List<Product> products);
+    public int[] deleteAll(List<Long> ids);
+    public int[] adjustQuantityAll(Map<Long, Long> deltas);
+    public long count();
 }
@@ -1,24 +1,81 @@
 package com.TDD.repository;
 
 import com.TDD.model.Product;
+import com.TDD.model.ProductQuery;
+import com.TDD.model.UpdateResult;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 @Component
-public class ProductRepositoryImpl implements ProductRepository {
+public class ProductRepositoryImpl implements ProductRepository, SmartInitializingSingleton {
+    // number of rows the driver pulls from the database per round trip when streaming
+    private static final int STREAM_FETCH_SIZE = 500;
+    // largest number of ids in one IN list. shorter lists are padded to a power of two by repeating an id,
+    // so only ten different statements are ever prepared and the database can reuse their plans
+    private static final int MAX_IN_LIST = 512;
+
+    // the fixed statements of the repository, all prepared once at startup, see afterSingletonsInstantiated
+    private static final String FIND_BY_ID_SQL = "SELECT " + ProductRowMapper.COLUMNS + " FROM Product WHERE id = ?";
+    private static final String FIND_VERSION_SQL = "SELECT version FROM Product WHERE id = ?";
+    private static final String FIND_ALL_SQL = "SELECT " + ProductRowMapper.COLUMNS + " FROM Product";
+    private static final String FIND_AFTER_SQL = "SELECT " + ProductRowMapper.COLUMNS + " FROM Product WHERE id > ? ORDER BY id LIMIT ?";
+    private static final String STREAM_ALL_SQL = "SELECT " + ProductRowMapper.COLUMNS + " FROM Product ORDER BY id";
+    private static final String EXISTS_SQL = "SELECT COUNT(*) FROM Product WHERE id = ?";
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM Product";
+    private static final String INSERT_SQL = "INSERT INTO Product (name, quantity, version) VALUES (?, ?, ?)";
+    // rows per insert statement in saveAll. h2 spends more time per statement than per row, 50 rows a statement
+    // insert about a fifth faster than one
+    private static final int ROWS_PER_INSERT = 50;
+    private static final String INSERT_MANY_SQL = INSERT_SQL + ", (?, ?, ?)".repeat(ROWS_PER_INSERT - 1);
+    private static final String UPDATE_SQL = "UPDATE Product SET name = ?, quantity = ?, version = ? WHERE id = ?";
+    private static final String UPDATE_IF_VERSION_SQL = "UPDATE Product SET name = ?, quantity = ?, version = version + 1 WHERE id = ? AND version = ?";
+    private static final String ADJUST_QUANTITY_SQL = "UPDATE Product SET quantity = quantity + ?, version = version + 1"
+            + " WHERE id = ? AND CAST(quantity AS BIGINT) + ? BETWEEN 0 AND 2147483647";
+    private static final String ADJUST_QUANTITY_RETURNING_SQL = "SELECT " + ProductRowMapper.COLUMNS + " FROM FINAL TABLE ("
+            + ADJUST_QUANTITY_SQL + ")";
+    private static final String DELETE_SQL = "DELETE FROM Product WHERE id = ?";
+    private static final List<String> STATEMENTS = List.of(FIND_BY_ID_SQL, FIND_VERSION_SQL, FIND_ALL_SQL, FIND_AFTER_SQL,
+            STREAM_ALL_SQL, EXISTS_SQL, COUNT_SQL, INSERT_SQL, INSERT_MANY_SQL, UPDATE_SQL, UPDATE_IF_VERSION_SQL, ADJUST_QUANTITY_SQL,
+            ADJUST_QUANTITY_RETURNING_SQL, DELETE_SQL);
+
     // JdbcTemplate is used for writing jpql queries
     @Autowired
     private JdbcTemplate jdbcTemplate;
+    // runs the batches that must be written all or nothing
+    @Autowired
+    private TransactionTemplate transactionTemplate;
     // for writing insert statements into the database
     private final SimpleJdbcInsert simpleJdbcInsert;
+    // number of statements sent to the database in one jdbc batch
+    @Value("${product.batch.chunk-size:1000}")
+    private int batchChunkSize;
+    @Value("${product.jdbc.prepare-on-startup:true}")
+    private boolean prepareOnStartup;
 
     // constructor
     public ProductRepositoryImpl(DataSource dataSource) {
@@ -29,48 +86,163 @@ public class ProductRepositoryImpl implements ProductRepository {
     }
 
 
+    // read the table metadata of the insert and prepare every fixed statement once all beans exist, so
+    // hibernate has created the table. a statement that no longer fits the schema fails the startup instead of
+    // the first request, and the first requests do not pay for parsing and planning
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!prepareOnStartup) {
+            return;
+        }
+        simpleJdbcInsert.compile();
+        jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+            for (String sql : STATEMENTS) {
+                con.prepareStatement(sql).close();
+            }
+            for (int listSize = 1; listSize <= MAX_IN_LIST; listSize <<= 1) {
+                con.prepareStatement(findByIdsSql(listSize)).close();
+            }
+            return null;
+        });
+    }
+
+    @Timed(value = "product.repository", histogram = true)
     @Override
     public Optional<Product> findById(long id) {
         try{
-            Product product = jdbcTemplate.queryForObject("SELECT * FROM Product WHERE id = ?",
-                    new Object[] {id}, // id is passed from method
-                    (rs, rowNum) -> {
-                      Product p = new Product();
-                      p.setId(rs.getLong("id"));
-                      p.setName(rs.getString("name"));
-                      p.setQuantity(rs.getInt("quantity"));
-                      p.setVersion(rs.getInt("version"));
-                      return p; // returning the product based on information from the database
-                    });
+            Product product = jdbcTemplate.queryForObject(FIND_BY_ID_SQL, ProductRowMapper.INSTANCE, id); // id is passed from method
             return Optional.of(product);
         } catch(EmptyResultDataAccessException e) { // if no such product id exists
             return Optional.empty();
         }
     } // end of find by id method
 
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public List<Product> findAllByIds(Collection<Long> ids) {
+        // the products that exist, in no particular order. every id is looked up once
+        List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<Product> products = new ArrayList<>(distinctIds.size());
+        for (int start = 0; start < distinctIds.size(); start += MAX_IN_LIST) {
+            List<Long> chunk = distinctIds.subList(start, Math.min(start + MAX_IN_LIST, distinctIds.size()));
+            int listSize = chunk.size() == 1 ? 1 : Integer.highestOneBit(chunk.size() - 1) << 1;
+            Object[] args = new Object[listSize];
+            for (int i = 0; i < listSize; i++) {
+                args[i] = chunk.get(Math.min(i, chunk.size() - 1));
+            }
+            products.addAll(jdbcTemplate.query(findByIdsSql(listSize), ProductRowMapper.INSTANCE, args));
+        }
+        return products;
+    } // end of find all by ids method
+
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public Optional<Integer> findVersion(long id) {
+        // only the version column is read, enough to check an etag without loading the product
+        List<Integer> versions = jdbcTemplate.queryForList(FIND_VERSION_SQL, Integer.class, id);
+        return versions.stream().findFirst();
+    } // end of findVersion method
+
+    @Timed(value = "product.repository", histogram = true)
     @Override
     public List<Product> findAll() {
-        return jdbcTemplate.query("SELECT * FROM Product",
-                (rs, rowNumber) -> {
-                   Product product = new Product();
-                   product.setId(rs.getLong("id"));
-                   product.setName(rs.getString("name"));
-                   product.setQuantity(rs.getInt("quantity"));
-                   product.setVersion(rs.getInt("version"));
-                   return product;
-                });
+        return jdbcTemplate.query(FIND_ALL_SQL, ProductRowMapper.INSTANCE);
     } // end of findAll method
 
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public List<Product> findAll(ProductQuery query) {
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT " + ProductRowMapper.COLUMNS + " FROM Product" + queryClauses(query, args);
+        return jdbcTemplate.query(sql, ProductRowMapper.INSTANCE, args.toArray());
+    } // end of findAll with query method
+
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public List<Map<String, Object>> findAll(ProductQuery query, List<String> fields) {
+        // only the requested columns are selected, the id is always included
+        List<String> columns = new ArrayList<>();
+        columns.add("id");
+        for (String field : fields) {
+            checkField(field);
+            if (!columns.contains(field)) {
+                columns.add(field);
+            }
+        }
+        List<Object> args = new ArrayList<>();
+        String sql = "SELECT " + String.join(", ", columns) + " FROM Product" + queryClauses(query, args);
+        return jdbcTemplate.query(sql, (rs, rowNum) -> {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < columns.size(); i++) {
+                row.put(columns.get(i), rs.getObject(i + 1));
+            }
+            return row;
+        }, args.toArray());
+    } // end of findAll with fields method
+
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public List<Product> findAfter(long afterId, int limit) {
+        // keyset pagination - the primary key index seeks straight to the cursor instead of skipping rows
+        return jdbcTemplate.query(FIND_AFTER_SQL, ProductRowMapper.INSTANCE, afterId, limit);
+    } // end of findAfter method
+
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public void streamAll(Consumer<Product> consumer) {
+        // each row is handed to the consumer as the result set yields it, nothing is collected into a list
+        jdbcTemplate.query(con -> {
+                    PreparedStatement ps = con.prepareStatement(STREAM_ALL_SQL);
+                    ps.setFetchSize(STREAM_FETCH_SIZE);
+                    return ps;
+                },
+                (RowCallbackHandler) rs -> consumer.accept(ProductRowMapper.INSTANCE.mapRow(rs, 0)));
+    } // end of streamAll method
+
+    @Timed(value = "product.repository", histogram = true)
     @Override
     public boolean update(Product product) {
         // if the number of updated rows == 1, return true
-        return jdbcTemplate.update("UPDATE Product SET name = ?, quantity = ?, version = ? WHERE id = ?",
+        return jdbcTemplate.update(UPDATE_SQL,
                 product.getName(),
                 product.getQuantity(),
                 product.getVersion(),
                 product.getId()) == 1;
     }
 
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public UpdateResult updateIfVersion(Product product, int expectedVersion) {
+        // compare and set in one statement - the row is only changed while it still has the expected version,
+        // so two concurrent updates with the same version cannot both succeed
+        int updatedRows = jdbcTemplate.update(UPDATE_IF_VERSION_SQL,
+                product.getName(),
+                product.getQuantity(),
+                product.getId(),
+                expectedVersion);
+        if (updatedRows == 1) {
+            product.setVersion(expectedVersion + 1);
+            return UpdateResult.UPDATED;
+        }
+
+        // only a failed update pays for a second query, to tell a missing product from a stale version
+        Integer count = jdbcTemplate.queryForObject(EXISTS_SQL, Integer.class, product.getId());
+        return count != null && count > 0 ? UpdateResult.CONFLICT : UpdateResult.NOT_FOUND;
+    } // end of updateIfVersion method
+
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public Optional<Product> adjustQuantity(long id, int delta) {
+        // the row lock of the update makes concurrent changes to one product queue up instead of failing, and
+        // the guard is checked against the quantity each of them sees. final table returns the row as the update
+        // left it, so no read is needed before or after. the sum is done in bigint so it cannot overflow
+        List<Product> updated = jdbcTemplate.query(ADJUST_QUANTITY_RETURNING_SQL,
+                ProductRowMapper.INSTANCE,
+                delta, id, delta);
+        return updated.stream().findFirst();
+    } // end of adjustQuantity method
+
+    @Timed(value = "product.repository", histogram = true)
     @Override
     public Product save(Product product) {
         // simpleJdbc insert saves the object as a map interface
@@ -87,9 +259,179 @@ public class ProductRepositoryImpl implements ProductRepository {
         return product;
     }
 
+    @Timed(value = "product.repository", histogram = true)
     @Override
     public boolean delete(Long id) {
         // if deletion of one row successful, return 1 which is truthsy statement.
-        return jdbcTemplate.update("DELETE FROM Product WHERE id = ?",id) == 1;
+        return jdbcTemplate.update(DELETE_SQL, id) == 1;
+    }
+
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public List<Product> saveAll(List<Product> products) {
+        // insert the products in chunks, every chunk is one jdbc batch and returns its generated ids together.
+        // whole groups of ROWS_PER_INSERT products go in with the long statement, the rest one row at a time
+        for (int start = 0; start < products.size(); start += batchChunkSize) {
+            List<Product> chunk = products.subList(start, Math.min(start + batchChunkSize, products.size()));
+            int grouped = chunk.size() / ROWS_PER_INSERT * ROWS_PER_INSERT;
+            jdbcTemplate.execute((ConnectionCallback<Void>) con -> {
+                insert(con, INSERT_MANY_SQL, ROWS_PER_INSERT, chunk.subList(0, grouped));
+                insert(con, INSERT_SQL, 1, chunk.subList(grouped, chunk.size()));
+                return null;
+            });
+        }
+        return products;
+    } // end of saveAll method
+
+    // one jdbc batch of the insert statement, which takes rowsPerStatement products
+    private static void insert(Connection con, String sql, int rowsPerStatement, List<Product> products) throws SQLException {
+        if (products.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement ps = con.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (int start = 0; start < products.size(); start += rowsPerStatement) {
+                for (int row = 0; row < rowsPerStatement; row++) {
+                    Product product = products.get(start + row);
+                    ps.setString(row * 3 + 1, product.getName());
+                    ps.setInt(row * 3 + 2, product.getQuantity());
+                    ps.setInt(row * 3 + 3, product.getVersion());
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            // the keys come back in the same order as the rows were added to the batch
+            try (ResultSet keys = ps.getGeneratedKeys()) {
+                for (Product product : products) {
+                    keys.next();
+                    product.setId(keys.getLong(1));
+                }
+            }
+        }
+    }
+
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public int[] updateAll(List<Product> products) {
+        // the number of updated rows for each product, 0 when the product does not exist
+        int[][] counts = jdbcTemplate.batchUpdate(UPDATE_SQL,
+                products,
+                batchChunkSize,
+                (ps, product) -> {
+                    ps.setString(1, product.getName());
+                    ps.setInt(2, product.getQuantity());
+                    ps.setInt(3, product.getVersion());
+                    ps.setLong(4, product.getId());
+                });
+        return flatten(counts, products.size());
+    } // end of updateAll method
+
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public int[] adjustQuantityAll(Map<Long, Long> deltas) {
+        // the batch form of adjustQuantity, 0 for a product that does not exist or would go below zero.
+        // the changes are added to the stock, not set, so the chunks run in one transaction: a failure rolls back
+        // the chunks already sent and the caller can apply the same changes again without counting any twice
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(deltas.entrySet());
+        int[][] counts = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(ADJUST_QUANTITY_SQL,
+                entries,
+                batchChunkSize,
+                (ps, entry) -> {
+                    ps.setLong(1, entry.getValue());
+                    ps.setLong(2, entry.getKey());
+                    ps.setLong(3, entry.getValue());
+                }));
+        return flatten(counts, entries.size());
+    } // end of adjustQuantityAll method
+
+    @Timed(value = "product.repository", histogram = true)
+    @Override
+    public int[] deleteAll(List<Long> ids) {
+        // the number of deleted rows for each id, 0 when the product does not exist
+        int[][] counts = jdbcTemplate.batchUpdate(DELETE_SQL,
+                ids,
+                batchChunkSize,
+                (ps, id) -> ps.setLong(1, id));
+        return flatten(counts, ids.size());
+    } // end of deleteAll method
+
+    @Override
+    public long count() {
+        Long count = jdbcTemplate.queryForObject(COUNT_SQL, Long.class);
+        return count == null ? 0 : count;
+    }
+
+    // where, order by and limit of a product query. values are bound as arguments, field names are checked
+    // against the table columns because they are written into the sql
+    private static String queryClauses(ProductQuery query, List<Object> args) {
+        List<String> conditions = new ArrayList<>();
+        // a prefix like can use the name index, a contains like has to look at every name
+        if (query.getNamePrefix() != null) {
+            conditions.add("name LIKE ? ESCAPE '\\'");
+            args.add(escapeLike(query.getNamePrefix()) + "%");
+        }
+        if (query.getNameContains() != null) {
+            conditions.add("name LIKE ? ESCAPE '\\'");
+            args.add("%" + escapeLike(query.getNameContains()) + "%");
+        }
+        if (query.getMinQuantity() != null) {
+            conditions.add("quantity >= ?");
+            args.add(query.getMinQuantity());
+        }
+        if (query.getMaxQuantity() != null) {
+            conditions.add("quantity <= ?");
+            args.add(query.getMaxQuantity());
+        }
+        String sort = query.getSort() == null ? "id" : query.getSort();
+        checkField(sort);
+        String direction = query.isDescending() ? " DESC" : " ASC";
+        if (query.getAfter() != null) {
+            if (!sort.equals("id")) {
+                throw new IllegalArgumentException("after can only be used when sorting by id");
+            }
+            conditions.add(query.isDescending() ? "id < ?" : "id > ?");
+            args.add(query.getAfter());
+        }
+
+        StringBuilder sql = new StringBuilder();
+        if (!conditions.isEmpty()) {
+            sql.append(" WHERE ").append(String.join(" AND ", conditions));
+        }
+        sql.append(" ORDER BY ").append(sort).append(direction);
+        // the id breaks ties so the order is the same on every request
+        if (!sort.equals("id")) {
+            sql.append(", id").append(direction);
+        }
+        if (query.getLimit() != null) {
+            sql.append(" LIMIT ?");
+            args.add(query.getLimit());
+        }
+        return sql.toString();
+    }
+
+    private static String findByIdsSql(int listSize) {
+        return "SELECT " + ProductRowMapper.COLUMNS + " FROM Product WHERE id IN ("
+                + String.join(", ", Collections.nCopies(listSize, "?")) + ")";
+    }
+
+    private static void checkField(String field) {
+        if (!ProductRowMapper.FIELDS.contains(field)) {
+            throw new IllegalArgumentException("unknown product field: " + field);
+        }
+    }
+
+    // the wildcards of like are matched literally in the value the client gave
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // batchUpdate returns the counts chunk by chunk, join them back into one array
+    private static int[] flatten(int[][] counts, int size) {
+        int[] result = new int[size];
+        int position = 0;
+        for (int[] chunk : counts) {
+            System.arraycopy(chunk, 0, result, position, chunk.length);
+            position += chunk.length;
+        }
+        return result;
     }
 }
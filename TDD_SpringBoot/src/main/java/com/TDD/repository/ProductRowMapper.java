@@ -0,0 +1,29 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+// maps a row selected with COLUMNS to a product. the columns are read by position, so the driver does not
+// have to look up the column labels for every row. the mapper has no state and is shared by all queries
+public final class ProductRowMapper implements RowMapper<Product> {
+
+    // columns of the product table, also the only field names clients may sort or project by
+    public static final List<String> FIELDS = List.of("id", "name", "quantity", "version");
+
+    // select list every product query must use, in this order
+    public static final String COLUMNS = String.join(", ", FIELDS);
+
+    public static final ProductRowMapper INSTANCE = new ProductRowMapper();
+
+    private ProductRowMapper() {
+    }
+
+    @Override
+    public Product mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new Product(rs.getLong(1), rs.getString(2), rs.getInt(3), rs.getInt(4));
+    }
+}
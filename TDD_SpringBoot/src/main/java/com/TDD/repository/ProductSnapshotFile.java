@@ -0,0 +1,282 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+// all products in one file, written and read through memory-mapped windows so neither side copies the data
+// through a stream buffer. the layout, every number big-endian:
+//   header, 64 bytes: magic "PSNP", format version, product count, body length, crc32c of the body, created at,
+//   and since version 2 the position in the write-ahead log the snapshot holds the changes up to
+//   body: per product id (8), quantity (4), version (4), name length in bytes (4, -1 for no name), utf-8 name
+// a new file is written next to the old one and moved over it when complete, so a crash while writing leaves
+// the previous snapshot in place. a file with another magic, format version or checksum is refused whole
+public class ProductSnapshotFile {
+
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int MAGIC = 0x50534E50;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_HEADER_SIZE = 20;
+    private static final int NULL_NAME = -1;
+    // bytes mapped at a time, a record never spans two windows
+    private static final int DEFAULT_WINDOW_SIZE = 64 << 20;
+
+    private final Path path;
+    private final int windowSize;
+
+    // constructor
+    public ProductSnapshotFile(Path path) {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    public ProductSnapshotFile(Path path, int windowSize) {
+        this.path = path;
+        this.windowSize = windowSize;
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(path);
+    }
+
+    // write the products the source hands to its consumer, replacing the current file once all are written.
+    // returns the number of products written
+    public long write(Consumer<Consumer<Product>> source) throws IOException {
+        return write(0, source);
+    }
+
+    // the same, for a snapshot that holds every change of the write-ahead log before the position
+    public long write(long logPosition, Consumer<Consumer<Product>> source) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        long count;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedOutput output = new MappedOutput(channel);
+            long[] written = {0};
+            source.accept(product -> {
+                output.put(product);
+                written[0]++;
+            });
+            count = written[0];
+            long end = output.finish();
+            channel.truncate(end);
+
+            // the header last, a file without it is never read
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC)
+                    .putInt(FORMAT_VERSION)
+                    .putLong(count)
+                    .putLong(end - HEADER_SIZE)
+                    .putLong(output.crc.getValue())
+                    .putLong(System.currentTimeMillis())
+                    .putLong(logPosition);
+            header.clear();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (SnapshotWriteException e) {
+            Files.deleteIfExists(temp);
+            throw e.getCause();
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    // check the file and hand every product in it to the consumer, in the order they were written. nothing is
+    // handed over when the file is damaged or of another format
+    public Header read(Consumer<Product> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Snapshot " + path + " is too short for a header");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(buffer, 0);
+            buffer.flip();
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(path + " is not a product snapshot");
+            }
+            int formatVersion = buffer.getInt();
+            if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+                throw new IOException("Snapshot " + path + " has format version " + formatVersion + ", expected " + FORMAT_VERSION);
+            }
+            // version 1 has no log position, it was written without a log
+            Header header = new Header(formatVersion, buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong(),
+                    formatVersion >= 2 ? buffer.getLong() : 0);
+            if (channel.size() != HEADER_SIZE + header.bodyLength) {
+                throw new IOException("Snapshot " + path + " is " + channel.size() + " bytes, expected " + (HEADER_SIZE + header.bodyLength));
+            }
+
+            // checked in full before the first product is handed over
+            CRC32C crc = new CRC32C();
+            for (long position = HEADER_SIZE; position < channel.size(); position += windowSize) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(windowSize, channel.size() - position)));
+            }
+            if (crc.getValue() != header.checksum) {
+                throw new IOException("Snapshot " + path + " is damaged, checksum mismatch");
+            }
+
+            MappedInput input = new MappedInput(channel);
+            long position = HEADER_SIZE;
+            for (long i = 0; i < header.count; i++) {
+                ByteBuffer record = input.at(position, RECORD_HEADER_SIZE);
+                long id = record.getLong();
+                int quantity = record.getInt();
+                int version = record.getInt();
+                int nameLength = record.getInt();
+                position += RECORD_HEADER_SIZE;
+                String name = null;
+                if (nameLength != NULL_NAME) {
+                    byte[] bytes = new byte[nameLength];
+                    input.at(position, nameLength).get(bytes);
+                    name = new String(bytes, StandardCharsets.UTF_8);
+                    position += nameLength;
+                }
+                consumer.accept(new Product(id, name, quantity, version));
+            }
+            return header;
+        }
+    }
+
+    // what the header of a snapshot says about it
+    public static class Header {
+        private final int formatVersion;
+        private final long count;
+        private final long bodyLength;
+        private final long checksum;
+        private final long createdAt;
+        private final long logPosition;
+
+        private Header(int formatVersion, long count, long bodyLength, long checksum, long createdAt, long logPosition) {
+            this.formatVersion = formatVersion;
+            this.count = count;
+            this.bodyLength = bodyLength;
+            this.checksum = checksum;
+            this.createdAt = createdAt;
+            this.logPosition = logPosition;
+        }
+
+        public int getFormatVersion() {
+            return formatVersion;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        // epoch milliseconds
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public long getLogPosition() {
+            return logPosition;
+        }
+    }
+
+    // appends records to the file one window at a time, the file grows as windows are mapped past its end
+    private class MappedOutput {
+        private final FileChannel channel;
+        private final CRC32C crc = new CRC32C();
+        private long base = HEADER_SIZE;
+        private MappedByteBuffer window;
+
+        private MappedOutput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void put(Product product) {
+            byte[] name = product.getName() == null ? null : product.getName().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buffer = reserve(RECORD_HEADER_SIZE + (name == null ? 0 : name.length));
+            buffer.putLong(product.getId())
+                    .putInt(product.getQuantity())
+                    .putInt(product.getVersion())
+                    .putInt(name == null ? NULL_NAME : name.length);
+            if (name != null) {
+                buffer.put(name);
+            }
+        }
+
+        private ByteBuffer reserve(int size) {
+            if (window == null || window.remaining() < size) {
+                if (window != null) {
+                    base += closeWindow();
+                }
+                try {
+                    window = channel.map(FileChannel.MapMode.READ_WRITE, base, Math.max(windowSize, size));
+                } catch (IOException e) {
+                    throw new SnapshotWriteException(e);
+                }
+            }
+            return window;
+        }
+
+        // the written part of the current window goes into the checksum, returns its length
+        private int closeWindow() {
+            int written = window.position();
+            window.flip();
+            crc.update(window);
+            window.force();
+            return written;
+        }
+
+        // end of the body in the file
+        private long finish() {
+            return window == null ? HEADER_SIZE : base + closeWindow();
+        }
+    }
+
+    // maps the window a record lies in, a new one when the record is outside the current window
+    private class MappedInput {
+        private final FileChannel channel;
+        private long base;
+        private MappedByteBuffer window;
+
+        private MappedInput(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private ByteBuffer at(long position, int size) throws IOException {
+            if (position + size > channel.size()) {
+                throw new IOException("Snapshot " + path + " ends inside a record at " + position);
+            }
+            if (window == null || position < base || position + size > base + window.limit()) {
+                base = position;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, base, Math.min(Math.max(windowSize, size), channel.size() - base));
+            }
+            window.position((int) (position - base));
+            return window;
+        }
+    }
+
+    // an io failure while mapping a window inside the source's callback, which cannot throw IOException
+    private static class SnapshotWriteException extends RuntimeException {
+        private SnapshotWriteException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+import com.TDD.service.ProductWriteBehind;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// keeps the products across restarts of the in-memory database, switched on with product.snapshot.enabled.
+// the table is written to a ProductSnapshotFile on shutdown and every interval, and an empty table is filled
+// from the file at startup. that runs while the beans are created, so the search index, the off-heap store and
+// the web server only start once the products are back. changes made after the last snapshot are lost if the
+// process dies without shutting down, unless the write-ahead log is on: a snapshot then holds the log position
+// it was started at, the log is replayed from there, and the segments before it are deleted
+@Component
+@ConditionalOnProperty(name = "product.snapshot.enabled", havingValue = "true")
+// hibernate creates the table
+@DependsOn("entityManagerFactory")
+public class ProductSnapshots {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductSnapshots.class);
+
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM Product";
+    // rows per insert statement while restoring. h2 spends more time per statement than per row, 100 rows a
+    // statement load about a fifth faster than one
+    private static final int ROWS_PER_INSERT = 100;
+    private static final String INSERT_ONE_SQL = "INSERT INTO Product (id, name, quantity, version) VALUES (?, ?, ?, ?)";
+    private static final String INSERT_MANY_SQL = INSERT_ONE_SQL + ", (?, ?, ?, ?)".repeat(ROWS_PER_INSERT - 1);
+    // rows inserted in one jdbc batch while restoring
+    private static final int RESTORE_CHUNK = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductRepository productRepository;
+    private final ProductSnapshotFile snapshotFile;
+    private final Duration interval;
+    // written before every snapshot, so the quantity changes it holds are in it
+    @Autowired(required = false)
+    private ProductWriteBehind writeBehind;
+    private final ScheduledExecutorService scheduler;
+    // set by the write-ahead log once it is open
+    private volatile ProductWriteAheadLog writeAheadLog;
+    // log position of the snapshot loaded at startup, the log is replayed from there
+    private long restoredLogPosition;
+
+    // constructor
+    public ProductSnapshots(JdbcTemplate jdbcTemplate,
+                            @Qualifier("productRepositoryImpl") ProductRepository productRepository,
+                            @Value("${product.snapshot.path:data/products.snapshot}") Path path,
+                            @Value("${product.snapshot.interval:10m}") Duration interval) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.productRepository = productRepository;
+        this.snapshotFile = new ProductSnapshotFile(path);
+        this.interval = interval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // fill the table from the snapshot, then start taking snapshots every interval. 0 writes the snapshot on
+    // shutdown only
+    @PostConstruct
+    public void start() {
+        restore();
+        if (!interval.isZero()) {
+            long intervalMillis = interval.toMillis();
+            scheduler.scheduleWithFixedDelay(this::scheduledWrite, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // fill the table from the snapshot, if there is one and the table is still empty. a damaged snapshot is
+    // moved aside, so the next snapshot does not replace it, and the application starts without the products
+    // instead of not at all
+    private void restore() {
+        if (!snapshotFile.exists()) {
+            log.info("No product snapshot at {}, starting empty", snapshotFile.path());
+            return;
+        }
+        long rows = jdbcTemplate.queryForObject(COUNT_SQL, Long.class);
+        if (rows > 0) {
+            log.info("Product table already has {} rows, snapshot {} is not loaded", rows, snapshotFile.path());
+            return;
+        }
+        long start = System.nanoTime();
+        List<Product> chunk = new ArrayList<>(RESTORE_CHUNK);
+        long[] maxId = {0};
+        ProductSnapshotFile.Header header;
+        try {
+            header = snapshotFile.read(product -> {
+                chunk.add(product);
+                maxId[0] = Math.max(maxId[0], product.getId());
+                if (chunk.size() == RESTORE_CHUNK) {
+                    insert(chunk);
+                    chunk.clear();
+                }
+            });
+        } catch (IOException e) {
+            log.error("Product snapshot {} cannot be loaded, starting empty", snapshotFile.path(), e);
+            moveAside();
+            return;
+        }
+        insert(chunk);
+        restoredLogPosition = header.getLogPosition();
+        // the ids were inserted as they are, new products continue after the highest
+        jdbcTemplate.execute("ALTER TABLE Product ALTER COLUMN id RESTART WITH " + (maxId[0] + 1));
+        log.info("Loaded {} products from snapshot {} of {} in {} ms", header.getCount(), snapshotFile.path(),
+                Instant.ofEpochMilli(header.getCreatedAt()), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    // write a snapshot of the table now, returns the number of products in it. one snapshot at a time
+    public synchronized long write() throws IOException {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+        long start = System.nanoTime();
+        // taken before the table is read. every change before it is in the snapshot, a change after it may be
+        // too, applying it again from the log gives the same product
+        ProductWriteAheadLog logInUse = writeAheadLog;
+        long logPosition = logInUse == null ? 0 : logInUse.position();
+        long count = snapshotFile.write(logPosition, productRepository::streamAll);
+        log.info("Wrote snapshot of {} products to {} in {} ms", count, snapshotFile.path(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (logInUse != null) {
+            logInUse.deleteBefore(logPosition);
+        }
+        return count;
+    }
+
+    public long restoredLogPosition() {
+        return restoredLogPosition;
+    }
+
+    // snapshots from now on hold the position of the log
+    public void useLog(ProductWriteAheadLog writeAheadLog) {
+        this.writeAheadLog = writeAheadLog;
+    }
+
+    // stop the timer and take the last snapshot. runs before the data source and the write-behind buffer are
+    // closed, both are dependencies of this bean
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            log.error("Writing the product snapshot on shutdown failed, {} keeps the previous one", snapshotFile.path(), e);
+        }
+    }
+
+    private void scheduledWrite() {
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Writing the product snapshot failed, {} keeps the previous one", snapshotFile.path(), e);
+        }
+    }
+
+    private void moveAside() {
+        Path damaged = snapshotFile.path().resolveSibling(snapshotFile.path().getFileName() + ".damaged-" + System.currentTimeMillis());
+        try {
+            Files.move(snapshotFile.path(), damaged);
+            log.warn("Moved the product snapshot that could not be loaded to {}", damaged);
+        } catch (IOException e) {
+            log.warn("Moving {} aside failed, the next snapshot replaces it", snapshotFile.path(), e);
+        }
+    }
+
+    // whole groups of ROWS_PER_INSERT rows with the long statement, the rest one row at a time
+    private void insert(List<Product> products) {
+        int groups = products.size() / ROWS_PER_INSERT;
+        if (groups > 0) {
+            jdbcTemplate.batchUpdate(INSERT_MANY_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int group) throws SQLException {
+                    for (int row = 0; row < ROWS_PER_INSERT; row++) {
+                        setProduct(ps, row * 4, products.get(group * ROWS_PER_INSERT + row));
+                    }
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return groups;
+                }
+            });
+        }
+        List<Product> rest = products.subList(groups * ROWS_PER_INSERT, products.size());
+        if (!rest.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_ONE_SQL, rest, rest.size(), (ps, product) -> setProduct(ps, 0, product));
+        }
+    }
+
+    private static void setProduct(PreparedStatement ps, int offset, Product product) throws SQLException {
+        ps.setLong(offset + 1, product.getId());
+        ps.setString(offset + 2, product.getName());
+        ps.setInt(offset + 3, product.getQuantity());
+        ps.setInt(offset + 4, product.getVersion());
+    }
+}
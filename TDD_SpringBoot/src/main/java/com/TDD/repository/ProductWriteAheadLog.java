@@ -0,0 +1,313 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+import com.TDD.service.ProductWriteBehind;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// write-ahead log of the product writes, switched on with product.wal.enabled. the service appends every
+// product it changes, as it is after the change, and a write is answered once the log is on disk. at startup the
+// records after the last snapshot are applied to the table again, so the in-memory database survives a crash
+// with every answered write. an fsync is shared by all writes waiting for it (group commit): with an
+// fsync-interval the log is synced that often in the background, with 0 the first waiting write syncs it and
+// the writes that arrive meanwhile share the next one. segments are rotated at segment-size, and the ones a
+// snapshot holds are deleted after it is written. snapshots are the only thing that deletes segments, so the log
+// needs them: without product.snapshot.enabled the context fails to start instead of the log growing, and taking
+// longer to replay, forever
+@Component
+@ConditionalOnProperty(name = "product.wal.enabled", havingValue = "true")
+// hibernate creates the table
+@DependsOn("entityManagerFactory")
+public class ProductWriteAheadLog {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductWriteAheadLog.class);
+
+    private static final String MERGE_SQL = "MERGE INTO Product (id, name, quantity, version) KEY (id) VALUES (?, ?, ?, ?)";
+    private static final String DELETE_SQL = "DELETE FROM Product WHERE id = ?";
+    private static final String MAX_ID_SQL = "SELECT COALESCE(MAX(id), 0) FROM Product";
+    // rows sent in one jdbc batch while replaying
+    private static final int REPLAY_CHUNK = 1000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ProductLogFile logFile;
+    private final Duration fsyncInterval;
+    private final boolean waitForFsync;
+    // restores the products before the log is replayed, tells from which position, and trims the log
+    private final ProductSnapshots snapshots;
+    // flushed before the log is closed, its writes are logged too
+    @Autowired(required = false)
+    private ProductWriteBehind writeBehind;
+
+    // a write to a product holds its lock until it is logged, so the log has the changes of a product in the
+    // order the database made them
+    private final ProductWriteLocks writeLocks = new ProductWriteLocks();
+    // one fsync at a time
+    private final ReentrantLock syncLock = new ReentrantLock();
+    // writes waiting for the background fsync
+    private final ReentrantLock waitLock = new ReentrantLock();
+    private final Condition synced = waitLock.newCondition();
+    // position the log is on disk up to
+    private volatile long durable;
+    private ScheduledExecutorService syncer;
+
+    private final Counter appended;
+    private final Timer fsyncs;
+    private final DistributionSummary bytesPerFsync;
+
+    // constructor
+    public ProductWriteAheadLog(JdbcTemplate jdbcTemplate,
+                                MeterRegistry meterRegistry,
+                                @Value("${product.wal.directory:data/wal}") Path directory,
+                                @Value("${product.wal.segment-size:64MB}") DataSize segmentSize,
+                                @Value("${product.wal.fsync-interval:5ms}") Duration fsyncInterval,
+                                @Value("${product.wal.wait-for-fsync:true}") boolean waitForFsync,
+                                ProductSnapshots snapshots) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.snapshots = snapshots;
+        this.logFile = new ProductLogFile(directory, segmentSize.toBytes());
+        this.fsyncInterval = fsyncInterval;
+        this.waitForFsync = waitForFsync;
+
+        appended = Counter.builder("product.wal.appends")
+                .description("Records appended to the product write-ahead log")
+                .register(meterRegistry);
+        fsyncs = Timer.builder("product.wal.fsync")
+                .description("Time to sync the product write-ahead log to disk")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        bytesPerFsync = DistributionSummary.builder("product.wal.fsync.size")
+                .description("Bytes of log records one fsync made durable, the writes it answered share it")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("product.wal.unsynced", this, writeAheadLog -> writeAheadLog.logFile.position() - writeAheadLog.durable)
+                .description("Bytes appended to the product write-ahead log and not yet synced")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("product.wal.size", this, ProductWriteAheadLog::sizeOnDisk)
+                .description("Bytes in the segments of the product write-ahead log")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    // apply the records after the restored snapshot, then open the log for the new writes
+    @PostConstruct
+    public void start() throws IOException {
+        long from = snapshots.restoredLogPosition();
+        long start = System.nanoTime();
+        DatabaseReplay replay = new DatabaseReplay();
+        long records = logFile.open(from, replay);
+        replay.finish();
+        if (records > 0) {
+            log.info("Replayed {} product log records from position {} in {} ms", records, from,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+        durable = logFile.position();
+        snapshots.useLog(this);
+        if (!fsyncInterval.isZero()) {
+            syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "product-wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalNanos = fsyncInterval.toNanos();
+            syncer.scheduleWithFixedDelay(this::backgroundSync, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // run the write while holding the locks of the products, see ProductWriteLocks
+    public <T> T locked(Collection<Long> ids, Supplier<T> write) {
+        return writeLocks.locked(ids, write);
+    }
+
+    // log the product as it is after a write, called under its lock
+    public void put(Product product) {
+        try {
+            logFile.put(product);
+            appended.increment();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Appending to the product log failed", e);
+        }
+    }
+
+    // log the delete of a product, called under its lock
+    public void delete(long id) {
+        try {
+            logFile.delete(id);
+            appended.increment();
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Appending to the product log failed", e);
+        }
+    }
+
+    // wait until everything logged so far is on disk. returns at once when product.wal.wait-for-fsync is false,
+    // a write is then answered before it is durable and one fsync-interval of writes can be lost
+    public void awaitDurable() {
+        long target = logFile.position();
+        if (durable >= target || (!waitForFsync && syncer != null)) {
+            return;
+        }
+        if (syncer != null) {
+            waitLock.lock();
+            try {
+                long waitNanos = fsyncInterval.toNanos() * 4;
+                while (durable < target && waitNanos > 0) {
+                    waitNanos = synced.awaitNanos(waitNanos);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waitLock.unlock();
+            }
+        }
+        // the background sync is late, failing, or not used: sync here
+        if (durable < target) {
+            sync(target);
+        }
+    }
+
+    // position after the last record, a snapshot started now holds every change before it
+    public long position() {
+        return logFile.position();
+    }
+
+    // delete the segments a snapshot made unnecessary
+    public void deleteBefore(long position) {
+        try {
+            logFile.deleteBefore(position);
+        } catch (IOException e) {
+            log.warn("Deleting product log segments before position {} failed", position, e);
+        }
+    }
+
+    // the quantity changes still waiting are written and logged, then the log is synced and closed. runs
+    // before the write-behind buffer and the snapshots are closed, both are dependencies of this bean
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (writeBehind != null) {
+            writeBehind.flush();
+        }
+        if (syncer != null) {
+            syncer.shutdownNow();
+        }
+        logFile.close();
+    }
+
+    private void backgroundSync() {
+        try {
+            sync(logFile.position());
+        } catch (RuntimeException e) {
+            log.warn("Syncing the product log failed, the waiting writes retry it", e);
+        }
+    }
+
+    // make the log durable up to at least the target. without an fsync when an earlier one already reached it
+    private void sync(long target) {
+        syncLock.lock();
+        try {
+            if (durable >= target) {
+                return;
+            }
+            long start = System.nanoTime();
+            long reached = logFile.sync();
+            fsyncs.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            bytesPerFsync.record(reached - durable);
+            durable = reached;
+        } catch (IOException e) {
+            throw new DataAccessResourceFailureException("Syncing the product log failed", e);
+        } finally {
+            syncLock.unlock();
+        }
+        waitLock.lock();
+        try {
+            synced.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    private double sizeOnDisk() {
+        try {
+            return logFile.size();
+        } catch (IOException e) {
+            return Double.NaN;
+        }
+    }
+
+    // applies the records to the table in batches, a batch of puts or of deletes at a time so their order stays
+    private class DatabaseReplay implements ProductLogFile.Replay {
+        private final List<Object[]> puts = new ArrayList<>();
+        private final List<Object[]> deletes = new ArrayList<>();
+        private long maxId;
+
+        @Override
+        public void put(Product product) {
+            if (!deletes.isEmpty()) {
+                execute(DELETE_SQL, deletes);
+            }
+            puts.add(new Object[] {product.getId(), product.getName(), product.getQuantity(), product.getVersion()});
+            maxId = Math.max(maxId, product.getId());
+            if (puts.size() == REPLAY_CHUNK) {
+                execute(MERGE_SQL, puts);
+            }
+        }
+
+        @Override
+        public void delete(long id) {
+            if (!puts.isEmpty()) {
+                execute(MERGE_SQL, puts);
+            }
+            deletes.add(new Object[] {id});
+            maxId = Math.max(maxId, id);
+            if (deletes.size() == REPLAY_CHUNK) {
+                execute(DELETE_SQL, deletes);
+            }
+        }
+
+        private void finish() {
+            if (!puts.isEmpty()) {
+                execute(MERGE_SQL, puts);
+            }
+            if (!deletes.isEmpty()) {
+                execute(DELETE_SQL, deletes);
+            }
+            if (maxId > 0) {
+                // the ids were written as they are, new products continue after the highest one ever logged
+                long next = Math.max(maxId, jdbcTemplate.queryForObject(MAX_ID_SQL, Long.class)) + 1;
+                jdbcTemplate.execute("ALTER TABLE Product ALTER COLUMN id RESTART WITH " + next);
+            }
+        }
+
+        private void execute(String sql, List<Object[]> rows) {
+            jdbcTemplate.batchUpdate(sql, rows);
+            rows.clear();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.TDD.repository;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// striped locks over product ids. a write to a product holds its lock from the database change until the change
+// is logged, indexed and published, so everything after the database sees the changes of a product in the order
+// the database made them. the ids are spread over a fixed number of locks, two products can share one
+public class ProductWriteLocks {
+
+    // number of write locks, the ids are spread over them
+    private static final int WRITE_LOCKS = 64;
+
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_LOCKS];
+
+    // constructor
+    public ProductWriteLocks() {
+        for (int i = 0; i < WRITE_LOCKS; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    // run the write while holding the locks of the products, taken in the same order by every caller so two
+    // writes cannot deadlock. new products need no lock, nobody else knows their ids yet
+    public <T> T locked(Collection<Long> ids, Supplier<T> write) {
+        boolean[] needed = new boolean[WRITE_LOCKS];
+        for (Long id : ids) {
+            needed[(int) Math.floorMod(id, (long) WRITE_LOCKS)] = true;
+        }
+        int taken = 0;
+        try {
+            for (; taken < WRITE_LOCKS; taken++) {
+                if (needed[taken]) {
+                    writeLocks[taken].lock();
+                }
+            }
+            return write.get();
+        } finally {
+            for (int i = 0; i < taken; i++) {
+                if (needed[i]) {
+                    writeLocks[i].unlock();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+import com.TDD.model.UpdateResult;
+import io.r2dbc.spi.Closeable;
+import io.r2dbc.spi.Connection;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.Row;
+import io.r2dbc.spi.RowMetadata;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.function.Function;
+
+// reactive repository over r2dbc. rows are emitted as the subscriber requests them, so a slow client
+// slows down the query instead of filling up memory. created by ReactiveConfig for the reactive profile.
+// r2dbc-h2 wraps the embedded h2 engine and runs each statement on the thread that subscribes, so the statements
+// are moved off netty's event loop onto the bounded elastic scheduler. the event loop stays free for other
+// clients, but every running statement still holds a thread there: h2 is not a non-blocking database
+public class R2dbcProductRepository implements ReactiveProductRepository {
+
+    private final ConnectionFactory connectionFactory;
+
+    // constructor
+    public R2dbcProductRepository(ConnectionFactory connectionFactory) {
+        this.connectionFactory = connectionFactory;
+    }
+
+    @Override
+    public Mono<Product> findById(long id) {
+        return withConnection(con -> Flux.from(con.createStatement("SELECT " + ProductRowMapper.COLUMNS + " FROM Product WHERE id = $1")
+                .bind("$1", id)
+                .execute())
+                .flatMap(result -> result.map(R2dbcProductRepository::mapRow)))
+                .next();
+    } // end of find by id method
+
+    @Override
+    public Flux<Product> findAll() {
+        return withConnection(con -> Flux.from(con.createStatement("SELECT " + ProductRowMapper.COLUMNS + " FROM Product ORDER BY id")
+                .execute())
+                .flatMap(result -> result.map(R2dbcProductRepository::mapRow)));
+    } // end of findAll method
+
+    @Override
+    public Flux<Product> findAfter(long afterId, int limit) {
+        return withConnection(con -> Flux.from(con.createStatement("SELECT " + ProductRowMapper.COLUMNS + " FROM Product WHERE id > $1 ORDER BY id LIMIT $2")
+                .bind("$1", afterId)
+                .bind("$2", limit)
+                .execute())
+                .flatMap(result -> result.map(R2dbcProductRepository::mapRow)));
+    } // end of findAfter method
+
+    @Override
+    public Mono<UpdateResult> updateIfVersion(Product product, int expectedVersion) {
+        // same compare and set as the jdbc repository, the count query only runs when nothing was updated
+        return withConnection(con -> Flux.from(con.createStatement("UPDATE Product SET name = $1, quantity = $2, version = version + 1 WHERE id = $3 AND version = $4")
+                .bind("$1", product.getName())
+                .bind("$2", product.getQuantity())
+                .bind("$3", product.getId())
+                .bind("$4", expectedVersion)
+                .execute())
+                .flatMap(result -> result.getRowsUpdated())
+                .flatMap(updatedRows -> {
+                    if (updatedRows == 1) {
+                        product.setVersion(expectedVersion + 1);
+                        return Mono.just(UpdateResult.UPDATED);
+                    }
+                    return Flux.from(con.createStatement("SELECT COUNT(*) FROM Product WHERE id = $1")
+                            .bind("$1", product.getId())
+                            .execute())
+                            .flatMap(result -> result.map((row, metadata) -> row.get(0, Long.class)))
+                            .map(count -> count > 0 ? UpdateResult.CONFLICT : UpdateResult.NOT_FOUND)
+                            .next();
+                }))
+                .next();
+    } // end of updateIfVersion method
+
+    @Override
+    public Mono<Product> save(Product product) {
+        return withConnection(con -> Flux.from(con.createStatement("INSERT INTO Product (name, quantity, version) VALUES ($1, $2, $3)")
+                .bind("$1", product.getName())
+                .bind("$2", product.getQuantity())
+                .bind("$3", product.getVersion())
+                .returnGeneratedValues("id")
+                .execute())
+                .flatMap(result -> result.map((row, metadata) -> row.get(0, Long.class))))
+                .next()
+                .map(id -> {
+                    product.setId(id);
+                    return product;
+                });
+    } // end of save method
+
+    @Override
+    public Mono<Boolean> delete(long id) {
+        return withConnection(con -> Flux.from(con.createStatement("DELETE FROM Product WHERE id = $1")
+                .bind("$1", id)
+                .execute())
+                .flatMap(result -> result.getRowsUpdated()))
+                .next()
+                .map(deletedRows -> deletedRows == 1);
+    } // end of delete method
+
+    // close the connection pool, called by spring when the context shuts down
+    public void close() {
+        if (connectionFactory instanceof Closeable closeable) {
+            Mono.from(closeable.close()).block();
+        }
+    }
+
+    // open a connection for the statement and close it when the statement completes, fails or is cancelled
+    private <T> Flux<T> withConnection(Function<Connection, Flux<T>> statement) {
+        return Flux.usingWhen(connectionFactory.create(), statement, Connection::close)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static Product mapRow(Row row, RowMetadata metadata) {
+        return new Product(row.get(0, Long.class), row.get(1, String.class), row.get(2, Integer.class), row.get(3, Integer.class));
+    }
+}
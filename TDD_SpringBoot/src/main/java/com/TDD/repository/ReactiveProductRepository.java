@@ -0,0 +1,17 @@
+package com.TDD.repository;
+
+import com.TDD.model.Product;
+import com.TDD.model.UpdateResult;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// non-blocking counterpart of ProductRepository, used by the reactive profile
+public interface ReactiveProductRepository {
+
+    public Mono<Product> findById(long id);
+    public Flux<Product> findAll();
+    public Flux<Product> findAfter(long afterId, int limit);
+    public Mono<UpdateResult> updateIfVersion(Product product, int expectedVersion);
+    public Mono<Product> save(Product product);
+    public Mono<Boolean> delete(long id);
+}
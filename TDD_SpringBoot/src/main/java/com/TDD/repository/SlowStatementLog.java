@@ -0,0 +1,201 @@
+package com.TDD.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+// times every jdbc statement and logs the ones slower than product.jdbc.slow-statement-threshold, with their
+// sql. the last slow statements are kept for the jdbc actuator endpoint. the data source is wrapped when it is
+// created, so hibernate, the jdbc template and the batch inserts are all covered. a query is timed until its
+// first rows are ready, a streamed result is fetched after that. a threshold of 0 turns the log off
+@Component
+public class SlowStatementLog implements BeanPostProcessor, MeterBinder {
+
+    private static final Logger log = LoggerFactory.getLogger(SlowStatementLog.class);
+
+    private final long thresholdNanos;
+    private final int historySize;
+    // the newest slow statements, newest first
+    private final Deque<SlowStatement> recent = new ArrayDeque<>();
+    private long slowCount;
+    private Counter slowCounter;
+
+    // constructor
+    public SlowStatementLog(@Value("${product.jdbc.slow-statement-threshold:200ms}") Duration threshold,
+                            @Value("${product.jdbc.slow-statement-history:50}") int historySize) {
+        this.thresholdNanos = threshold.toNanos();
+        this.historySize = historySize;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (thresholdNanos > 0 && bean instanceof DataSource && !(bean instanceof TimingDataSource)) {
+            return new TimingDataSource((DataSource) bean);
+        }
+        return bean;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        slowCounter = Counter.builder("product.jdbc.slow.statements")
+                .description("Statements that took longer than product.jdbc.slow-statement-threshold")
+                .register(registry);
+    }
+
+    public Duration threshold() {
+        return Duration.ofNanos(thresholdNanos);
+    }
+
+    // number of slow statements since the start
+    public synchronized long slowCount() {
+        return slowCount;
+    }
+
+    // the newest slow statements, newest first
+    public synchronized List<SlowStatement> recent() {
+        return new ArrayList<>(recent);
+    }
+
+    void record(String sql, long nanos) {
+        if (nanos < thresholdNanos) {
+            return;
+        }
+        log.warn("Slow statement took {} ms: {}", nanos / 1_000_000, sql);
+        if (slowCounter != null) {
+            slowCounter.increment();
+        }
+        synchronized (this) {
+            slowCount++;
+            recent.addFirst(new SlowStatement(sql, nanos / 1_000_000.0, Instant.now()));
+            if (recent.size() > historySize) {
+                recent.removeLast();
+            }
+        }
+    }
+
+    // one slow statement as the endpoint reports it
+    public static class SlowStatement {
+        private final String sql;
+        private final double millis;
+        private final Instant at;
+
+        SlowStatement(String sql, double millis, Instant at) {
+            this.sql = sql;
+            this.millis = millis;
+            this.at = at;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public double getMillis() {
+            return millis;
+        }
+
+        public Instant getAt() {
+            return at;
+        }
+    }
+
+    // hands out connections whose statements are timed. spring boot unwraps a DelegatingDataSource, so the
+    // pool metrics still find the hikari pool behind it
+    private class TimingDataSource extends DelegatingDataSource {
+
+        TimingDataSource(DataSource dataSource) {
+            super(dataSource);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return timed(super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return timed(super.getConnection(username, password));
+        }
+
+        private Connection timed(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        if (isIdentityMethod(method)) {
+                            return identity(proxy, method, args);
+                        }
+                        Object result = invoke(connection, method, args);
+                        // a prepared statement knows its sql from the start, a plain statement gets it per execute
+                        if (result instanceof Statement && method.getName().startsWith("prepare")) {
+                            return timed((Statement) result, (String) args[0]);
+                        }
+                        if (result instanceof Statement) {
+                            return timed((Statement) result, null);
+                        }
+                        return result;
+                    });
+        }
+
+        private Statement timed(Statement statement, String sql) {
+            Class<?> type = statement instanceof CallableStatement ? CallableStatement.class
+                    : statement instanceof PreparedStatement ? PreparedStatement.class : Statement.class;
+            InvocationHandler handler = (proxy, method, args) -> {
+                if (isIdentityMethod(method)) {
+                    return identity(proxy, method, args);
+                }
+                if (!method.getName().startsWith("execute")) {
+                    return invoke(statement, method, args);
+                }
+                long start = System.nanoTime();
+                try {
+                    return invoke(statement, method, args);
+                } finally {
+                    String executed = sql != null ? sql
+                            : args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : "batch";
+                    record(executed, System.nanoTime() - start);
+                }
+            };
+            return (Statement) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+        }
+
+        private boolean isIdentityMethod(Method method) {
+            return method.getName().equals("equals") && method.getParameterCount() == 1
+                    || method.getName().equals("hashCode") && method.getParameterCount() == 0;
+        }
+
+        // a proxy is only equal to itself, spring compares the connections it holds in a transaction
+        private Object identity(Object proxy, Method method, Object[] args) {
+            return method.getName().equals("equals") ? proxy == args[0] : System.identityHashCode(proxy);
+        }
+
+        // the exception thrown by the statement, not the reflection wrapper around it
+        private Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+}
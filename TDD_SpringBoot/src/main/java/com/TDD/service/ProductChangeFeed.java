@@ -0,0 +1,173 @@
+package com.TDD.service;
+
+import com.TDD.model.Product;
+import com.TDD.model.ProductChange;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// the last buffer-size product changes in a ring buffer, numbered with a sequence that only increases. clients
+// read the changes after a sequence they have seen, or subscribe and are sent every change as it is made.
+// the sequence starts at the start time in microseconds, so a sequence from before a restart is always older
+// than anything in the buffer and the client is told to load the products again instead of missing changes.
+// ProductServiceImpl publishes under the write lock of the product, so the changes of one product are numbered in
+// the order the database made them
+@Component
+public class ProductChangeFeed {
+
+    private final ProductChange[] buffer;
+    // sequence of the newest change, the buffer holds the changes from latest - buffer.length + 1 to latest
+    private long latest;
+    private final long first;
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    // sends to all subscribers from one thread, so a write never waits for a slow client
+    private final ScheduledExecutorService dispatcher;
+    private final AtomicBoolean dispatchQueued = new AtomicBoolean();
+
+    // constructor
+    public ProductChangeFeed(@Value("${product.changes.buffer-size:10000}") int bufferSize,
+                             @Value("${product.changes.heartbeat:15s}") Duration heartbeat) {
+        this.buffer = new ProductChange[bufferSize];
+        this.first = System.currentTimeMillis() * 1000;
+        this.latest = first;
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-change-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // a comment line every heartbeat keeps idle connections open through proxies and finds closed ones
+        long heartbeatMillis = heartbeat.toMillis();
+        dispatcher.scheduleWithFixedDelay(this::keepAlive, heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // add a change, its sequence is returned. the product is copied, the caller may go on changing it
+    public long publish(ProductChange.Type type, long id, Product product) {
+        Product copy = product == null ? null
+                : new Product(product.getId(), product.getName(), product.getQuantity(), product.getVersion());
+        long sequence;
+        synchronized (buffer) {
+            sequence = ++latest;
+            buffer[(int) (sequence % buffer.length)] = new ProductChange(sequence, type, id, copy);
+        }
+        if (!subscriptions.isEmpty() && dispatchQueued.compareAndSet(false, true)) {
+            dispatcher.execute(this::dispatch);
+        }
+        return sequence;
+    }
+
+    // sequence of the newest change
+    public long latestSequence() {
+        synchronized (buffer) {
+            return latest;
+        }
+    }
+
+    // up to limit changes after the sequence, oldest first. empty when changes after it are no longer in the
+    // buffer, or the sequence was never handed out by this feed
+    public Optional<List<ProductChange>> since(long after, int limit) {
+        synchronized (buffer) {
+            long oldest = Math.max(first + 1, latest - buffer.length + 1);
+            if (after < oldest - 1 || after > latest) {
+                return Optional.empty();
+            }
+            long last = Math.min(latest, after + limit);
+            List<ProductChange> changes = new ArrayList<>((int) (last - after));
+            for (long sequence = after + 1; sequence <= last; sequence++) {
+                changes.add(buffer[(int) (sequence % buffer.length)]);
+            }
+            return Optional.of(changes);
+        }
+    }
+
+    // send the changes after the sequence to the sink, then every new change until the subscription is
+    // cancelled or the sink fails
+    public Subscription subscribe(long after, ChangeSink sink) {
+        Subscription subscription = new Subscription(after, sink);
+        subscriptions.add(subscription);
+        dispatchQueued.set(true);
+        dispatcher.execute(this::dispatch);
+        return subscription;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        dispatcher.shutdownNow();
+        subscriptions.forEach(Subscription::cancel);
+    }
+
+    private void dispatch() {
+        dispatchQueued.set(false);
+        for (Subscription subscription : subscriptions) {
+            subscription.sendPending();
+        }
+    }
+
+    private void keepAlive() {
+        for (Subscription subscription : subscriptions) {
+            try {
+                subscription.sink.keepAlive();
+            } catch (Exception e) {
+                subscription.cancel();
+            }
+        }
+    }
+
+    // where a subscriber's changes go, a failure ends the subscription
+    public interface ChangeSink {
+        void send(ProductChange change) throws Exception;
+
+        // the changes after the last one sent are gone from the buffer, the subscription ends after this
+        void gap(long latestSequence) throws Exception;
+
+        void keepAlive() throws Exception;
+    }
+
+    public class Subscription {
+        private final ChangeSink sink;
+        // sequence of the last change sent, only used on the dispatcher thread
+        private long sent;
+
+        private Subscription(long after, ChangeSink sink) {
+            this.sent = after;
+            this.sink = sink;
+        }
+
+        public void cancel() {
+            subscriptions.remove(this);
+        }
+
+        private void sendPending() {
+            try {
+                while (true) {
+                    Optional<List<ProductChange>> changes = since(sent, 1000);
+                    if (!changes.isPresent()) {
+                        cancel();
+                        sink.gap(latestSequence());
+                        return;
+                    }
+                    if (changes.get().isEmpty()) {
+                        return;
+                    }
+                    for (ProductChange change : changes.get()) {
+                        sink.send(change);
+                        sent = change.getSequence();
+                    }
+                }
+            } catch (Exception e) {
+                // the client went away
+                cancel();
+            }
+        }
+    }
+}
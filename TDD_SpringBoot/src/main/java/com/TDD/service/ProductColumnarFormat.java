@@ -0,0 +1,159 @@
+package com.TDD.service;
+
+import com.TDD.model.Product;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+// a simple column oriented binary format for the product export, for analytics jobs that read a few columns of
+// many rows. the rows are cut into row groups, and a row group holds each column in one piece, so a reader can
+// skip the columns it does not need and a compressor sees runs of alike values. every number big-endian:
+//   header: magic "PCOL" (4), format version (4)
+//   row group: row count (4), ids (8 each), quantities (4 each), versions (4 each),
+//              name lengths in bytes (4 each, -1 for no name), length of the names (4), utf-8 names
+//   end: a row count of 0, then the number of rows in the file (8)
+public final class ProductColumnarFormat {
+
+    public static final String MEDIA_TYPE = "application/x-product-columns";
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x50434F4C;
+    private static final int NULL_NAME = -1;
+
+    private ProductColumnarFormat() {
+    }
+
+    // collects the products of one row group and writes it when it is full. finish writes the last one and the
+    // end, the output is flushed but not closed
+    public static class Writer {
+        private final DataOutputStream output;
+        private final long[] ids;
+        private final int[] quantities;
+        private final int[] versions;
+        private final int[] nameLengths;
+        private byte[] names = new byte[1 << 16];
+        private int namesLength;
+        private int rows;
+        private long totalRows;
+
+        public Writer(OutputStream output, int rowGroupSize) throws IOException {
+            this.output = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+            this.ids = new long[rowGroupSize];
+            this.quantities = new int[rowGroupSize];
+            this.versions = new int[rowGroupSize];
+            this.nameLengths = new int[rowGroupSize];
+            this.output.writeInt(MAGIC);
+            this.output.writeInt(FORMAT_VERSION);
+        }
+
+        public void add(Product product) throws IOException {
+            ids[rows] = product.getId();
+            quantities[rows] = product.getQuantity();
+            versions[rows] = product.getVersion();
+            if (product.getName() == null) {
+                nameLengths[rows] = NULL_NAME;
+            } else {
+                byte[] name = product.getName().getBytes(StandardCharsets.UTF_8);
+                if (names.length - namesLength < name.length) {
+                    names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + name.length));
+                }
+                System.arraycopy(name, 0, names, namesLength, name.length);
+                namesLength += name.length;
+                nameLengths[rows] = name.length;
+            }
+            if (++rows == ids.length) {
+                writeRowGroup();
+            }
+        }
+
+        // returns the number of rows written
+        public long finish() throws IOException {
+            if (rows > 0) {
+                writeRowGroup();
+            }
+            output.writeInt(0);
+            output.writeLong(totalRows);
+            output.flush();
+            return totalRows;
+        }
+
+        private void writeRowGroup() throws IOException {
+            output.writeInt(rows);
+            for (int i = 0; i < rows; i++) {
+                output.writeLong(ids[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                output.writeInt(quantities[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                output.writeInt(versions[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                output.writeInt(nameLengths[i]);
+            }
+            output.writeInt(namesLength);
+            output.write(names, 0, namesLength);
+            totalRows += rows;
+            rows = 0;
+            namesLength = 0;
+        }
+    }
+
+    // hand every product in the input to the consumer in file order, returns the number of rows. fails on
+    // another format or version and on an input that ends early
+    public static long read(InputStream input, Consumer<Product> consumer) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(input, 1 << 16));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a product columns file");
+        }
+        int formatVersion = data.readInt();
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Product columns format version " + formatVersion + ", expected " + FORMAT_VERSION);
+        }
+        long totalRows = 0;
+        for (int rows = data.readInt(); rows > 0; rows = data.readInt()) {
+            long[] ids = new long[rows];
+            int[] quantities = new int[rows];
+            int[] versions = new int[rows];
+            int[] nameLengths = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                ids[i] = data.readLong();
+            }
+            for (int i = 0; i < rows; i++) {
+                quantities[i] = data.readInt();
+            }
+            for (int i = 0; i < rows; i++) {
+                versions[i] = data.readInt();
+            }
+            for (int i = 0; i < rows; i++) {
+                nameLengths[i] = data.readInt();
+            }
+            byte[] names = new byte[data.readInt()];
+            data.readFully(names);
+            int offset = 0;
+            for (int i = 0; i < rows; i++) {
+                String name = null;
+                if (nameLengths[i] != NULL_NAME) {
+                    name = new String(names, offset, nameLengths[i], StandardCharsets.UTF_8);
+                    offset += nameLengths[i];
+                }
+                consumer.accept(new Product(ids[i], name, quantities[i], versions[i]));
+            }
+            totalRows += rows;
+        }
+        long expectedRows = data.readLong();
+        if (expectedRows != totalRows) {
+            throw new EOFException("Product columns file has " + totalRows + " rows, its end says " + expectedRows);
+        }
+        return totalRows;
+    }
+}
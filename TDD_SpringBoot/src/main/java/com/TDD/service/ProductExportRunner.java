@@ -0,0 +1,67 @@
+package com.TDD.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+// the command line way to export the catalog: writes product.export.file once the application has started,
+//   java -jar demo-exec.jar --spring.main.web-application-type=none --product.snapshot.enabled=true \
+//       --product.export.file=products.pcol.gz
+// the format follows the extension, .ndjson (or .jsonl), .csv or .pcol for ProductColumnarFormat, and a further
+// .gz compresses the file with gzip. the file is written next to its place and moved there when complete
+@Component
+@ConditionalOnProperty(name = "product.export.file")
+// after ProductImportRunner
+@Order(2)
+public class ProductExportRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductExportRunner.class);
+
+    private final ProductExporter productExporter;
+    private final Path file;
+
+    // constructor
+    public ProductExportRunner(ProductExporter productExporter, @Value("${product.export.file}") Path file) {
+        this.productExporter = productExporter;
+        this.file = file;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean gzip = name.endsWith(".gz");
+        if (gzip) {
+            name = name.substring(0, name.length() - ".gz".length());
+        }
+        ProductExporter.Format format = ProductExporter.Format.of(name.substring(name.lastIndexOf('.') + 1));
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        long rows;
+        try (OutputStream output = gzip
+                ? new GZIPOutputStream(Files.newOutputStream(temp), 1 << 16)
+                : Files.newOutputStream(temp)) {
+            rows = productExporter.export(output, format);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("Exported {} products to {}, {} bytes", rows, file, Files.size(file));
+    }
+}
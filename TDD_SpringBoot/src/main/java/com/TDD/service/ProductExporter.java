@@ -0,0 +1,189 @@
+package com.TDD.service;
+
+import com.TDD.model.Product;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// bulk export of the whole catalog for analytics jobs, as ndjson, csv or ProductColumnarFormat. the products
+// are written as the database cursor hands them over, see ProductService.streamAll, so the memory used does not
+// grow with the catalog: a row at a time for ndjson and csv, a row group for the columnar format. the database
+// connection is held until the last row is written
+@Component
+public class ProductExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductExporter.class);
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv"),
+        COLUMNAR(ProductColumnarFormat.MEDIA_TYPE, "pcol");
+
+        private final String mediaType;
+        private final String extension;
+
+        Format(String mediaType, String extension) {
+            this.mediaType = mediaType;
+            this.extension = extension;
+        }
+
+        public String getMediaType() {
+            return mediaType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        // the format named by a request parameter, in any case, or by a file extension
+        public static Format of(String name) {
+            String lowerCase = name.toLowerCase(Locale.ROOT);
+            for (Format format : values()) {
+                if (format.name().toLowerCase(Locale.ROOT).equals(lowerCase) || format.extension.equals(lowerCase)) {
+                    return format;
+                }
+            }
+            if (lowerCase.equals("jsonl")) {
+                return NDJSON;
+            }
+            throw new IllegalArgumentException("unknown export format '" + name + "', expected ndjson, csv or columnar");
+        }
+    }
+
+    private final ProductService productService;
+    private final ObjectMapper objectMapper;
+    private final int rowGroupSize;
+    private final Map<Format, Counter> exportedRows = new EnumMap<>(Format.class);
+
+    // constructor
+    public ProductExporter(ProductService productService,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${product.export.row-group-size:65536}") int rowGroupSize) {
+        this.productService = productService;
+        this.objectMapper = objectMapper;
+        this.rowGroupSize = rowGroupSize;
+        for (Format format : Format.values()) {
+            exportedRows.put(format, Counter.builder("product.export.rows")
+                    .description("Products written by bulk exports")
+                    .tag("format", format.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+    }
+
+    // write every product to the output in the format, ordered by id. the output is flushed but not closed,
+    // returns the number of products written
+    public long export(OutputStream output, Format format) throws IOException {
+        long start = System.nanoTime();
+        long rows;
+        try {
+            rows = switch (format) {
+                case NDJSON -> writeNdjson(output);
+                case CSV -> writeCsv(output);
+                case COLUMNAR -> writeColumnar(output);
+            };
+        } catch (UncheckedIOException e) {
+            // the consumer of streamAll cannot throw IOException, a closed connection comes back wrapped
+            throw e.getCause();
+        }
+        exportedRows.get(format).increment(rows);
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        log.info("Exported {} products as {} in {} ms", rows, format, millis);
+        return rows;
+    }
+
+    // one product object per line
+    private long writeNdjson(OutputStream output) throws IOException {
+        ObjectWriter writer = objectMapper.writerFor(Product.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        long[] rows = {0};
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(output)) {
+            // the output belongs to the caller, and the lines are separated by hand instead of the default space
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+            productService.streamAll(product -> {
+                try {
+                    writer.writeValue(generator, product);
+                    generator.writeRaw('\n');
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return rows[0];
+    }
+
+    // a header line, then id, name, quantity and version per product. a name is quoted when it has a comma, a
+    // quote or a line break in it, an empty field is no name. POST /products/import reads it back as new
+    // products, all but the names with line breaks
+    private long writeCsv(OutputStream output) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), 1 << 16);
+        writer.write("id,name,quantity,version\n");
+        long[] rows = {0};
+        productService.streamAll(product -> {
+            try {
+                writer.write(Long.toString(product.getId()));
+                writer.write(',');
+                if (product.getName() != null) {
+                    writeCsvField(writer, product.getName());
+                }
+                writer.write(',');
+                writer.write(Integer.toString(product.getQuantity()));
+                writer.write(',');
+                writer.write(Integer.toString(product.getVersion()));
+                writer.write('\n');
+                rows[0]++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        writer.flush();
+        return rows[0];
+    }
+
+    private static void writeCsvField(Writer writer, String value) throws IOException {
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        writer.write(value.replace("\"", "\"\""));
+        writer.write('"');
+    }
+
+    private long writeColumnar(OutputStream output) throws IOException {
+        ProductColumnarFormat.Writer writer = new ProductColumnarFormat.Writer(output, rowGroupSize);
+        productService.streamAll(product -> {
+            try {
+                writer.add(product);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return writer.finish();
+    }
+}
@@ -0,0 +1,66 @@
+package com.TDD.service;
+
+import com.TDD.model.ImportReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+// the command line way to load a catalog: imports product.import.file once the application has started,
+//   java -jar demo-exec.jar --product.import.file=catalog.csv
+// a .ndjson or .jsonl file is read as ndjson, anything else as csv. with --spring.main.web-application-type=none
+// the application ends after the import, and with product.snapshot.enabled the products are written to the
+// snapshot on the way out, for the next start to load
+@Component
+@ConditionalOnProperty(name = "product.import.file")
+// before ProductExportRunner, so one run can import a file and export the result
+@Order(1)
+public class ProductImportRunner implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductImportRunner.class);
+
+    // rejected lines written to the log, the report holds up to product.import.max-errors of them
+    private static final int LOGGED_ERRORS = 20;
+
+    private final ProductImporter productImporter;
+    private final Path file;
+
+    // constructor
+    public ProductImportRunner(ProductImporter productImporter, @Value("${product.import.file}") Path file) {
+        this.productImporter = productImporter;
+        this.file = file;
+    }
+
+    // a file that cannot be read or has no usable header stops the application
+    @Override
+    public void run(ApplicationArguments args) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        ProductImporter.Format format = name.endsWith(".ndjson") || name.endsWith(".jsonl")
+                ? ProductImporter.Format.NDJSON
+                : ProductImporter.Format.CSV;
+        log.info("Importing products from {} as {}", file, format);
+        ImportReport report;
+        try (InputStream input = Files.newInputStream(file)) {
+            report = productImporter.importProducts(input, format);
+        }
+        for (ImportReport.LineError error : report.getErrors().subList(0, Math.min(LOGGED_ERRORS, report.getErrors().size()))) {
+            log.warn("{} line {}: {}", file, error.getLine(), error.getMessage());
+        }
+        if (report.getRejected() > LOGGED_ERRORS) {
+            log.warn("{} more lines of {} were rejected", report.getRejected() - LOGGED_ERRORS, file);
+        }
+        if (!report.isCompleted()) {
+            throw new IllegalStateException("Importing " + file + " stopped after " + report.getImported() + " products");
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package com.TDD.service;
+
+import com.TDD.model.ImportReport;
+import com.TDD.model.Product;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// bulk import of new products from csv or ndjson, for catalogs too big for one POST per product. the import
+// is a pipeline of three stages joined by a bounded queue: one thread reads the lines and cuts them into chunks,
+// the chunks are parsed and checked on a pool of parser threads, and the calling thread saves them in file
+// order through ProductService.saveAll, so the cache, the search index, the change feed and the write-ahead log
+// see the imported products like any other batch. the queue holds queue-size chunks, a reader faster than the
+// database waits instead of filling the memory. a bad line is reported and skipped, the rest is imported
+@Component
+public class ProductImporter {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductImporter.class);
+
+    public enum Format {
+        CSV,
+        NDJSON
+    }
+
+    // length of the name column
+    private static final int MAX_NAME_LENGTH = 255;
+    // marks the end of the input in the queue
+    private static final ParsedChunk END = new ParsedChunk(0, 0, 0, List.of(), List.of());
+
+    private final ProductService productService;
+    private final ObjectReader productReader;
+    private final int chunkSize;
+    private final int queueSize;
+    private final int maxErrors;
+    private final Duration progressInterval;
+    private final ExecutorService parsers;
+
+    private final Counter importedRows;
+    private final Counter rejectedRows;
+    private final Timer imports;
+
+    // constructor
+    public ProductImporter(ProductService productService,
+                           ObjectMapper objectMapper,
+                           MeterRegistry meterRegistry,
+                           @Value("${product.import.chunk-size:1000}") int chunkSize,
+                           @Value("${product.import.parsers:0}") int parsers,
+                           @Value("${product.import.queue-size:16}") int queueSize,
+                           @Value("${product.import.max-errors:1000}") int maxErrors,
+                           @Value("${product.import.progress-interval:5s}") Duration progressInterval) {
+        this.productService = productService;
+        this.productReader = objectMapper.readerFor(Product.class);
+        this.chunkSize = chunkSize;
+        this.queueSize = queueSize;
+        this.maxErrors = maxErrors;
+        this.progressInterval = progressInterval;
+        AtomicInteger threads = new AtomicInteger();
+        this.parsers = Executors.newFixedThreadPool(parsers > 0 ? parsers : Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "product-import-parser-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        importedRows = Counter.builder("product.import.rows")
+                .description("Lines of bulk imports, saved as products or rejected")
+                .tag("result", "imported")
+                .register(meterRegistry);
+        rejectedRows = Counter.builder("product.import.rows")
+                .description("Lines of bulk imports, saved as products or rejected")
+                .tag("result", "rejected")
+                .register(meterRegistry);
+        imports = Timer.builder("product.import")
+                .description("Time to run a bulk import")
+                .register(meterRegistry);
+    }
+
+    // import the products in the input, which is read to the end. a csv file starts with a header naming its
+    // columns, name and quantity are needed and other columns are left out. ndjson has one product object per
+    // line. ids and versions in the input are ignored, every line becomes a new product. blank lines are skipped.
+    // fails with IllegalArgumentException when a csv header has no name or quantity column, before anything is
+    // saved, and with IOException when the input cannot be read, keeping the products saved until then
+    public ImportReport importProducts(InputStream input, Format format) throws IOException {
+        long start = System.nanoTime();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16);
+        LineParser parser;
+        long firstLine;
+        if (format == Format.CSV) {
+            parser = new CsvHeader(reader.readLine());
+            firstLine = 2;
+        } else {
+            parser = this::parseJson;
+            firstLine = 1;
+        }
+
+        BlockingQueue<Future<ParsedChunk>> parsed = new ArrayBlockingQueue<>(queueSize);
+        AtomicBoolean stopped = new AtomicBoolean();
+        Thread readerThread = new Thread(() -> read(reader, firstLine, parser, parsed, stopped), "product-import-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        long lines = 0;
+        long imported = 0;
+        long rejected = 0;
+        boolean completed = true;
+        List<ImportReport.LineError> errors = new ArrayList<>();
+        long lastProgress = System.nanoTime();
+        try {
+            for (ParsedChunk chunk = take(parsed); chunk != END; chunk = take(parsed)) {
+                lines += chunk.rows;
+                rejected += chunk.errors.size();
+                rejectedRows.increment(chunk.errors.size());
+                for (ImportReport.LineError error : chunk.errors) {
+                    if (errors.size() < maxErrors) {
+                        errors.add(error);
+                    }
+                }
+                if (!chunk.products.isEmpty()) {
+                    try {
+                        productService.saveAll(chunk.products);
+                    } catch (DataAccessException e) {
+                        // the database will most likely refuse the next chunks too, stop here
+                        log.warn("Import stopped, saving the products of lines {} to {} failed", chunk.firstLine,
+                                chunk.lastLine, e);
+                        rejected += chunk.products.size();
+                        rejectedRows.increment(chunk.products.size());
+                        errors.add(new ImportReport.LineError(chunk.firstLine, "lines " + chunk.firstLine + " to "
+                                + chunk.lastLine + " were not saved, the import stopped: "
+                                + e.getMostSpecificCause().getMessage()));
+                        completed = false;
+                        break;
+                    }
+                    imported += chunk.products.size();
+                    importedRows.increment(chunk.products.size());
+                }
+                if (System.nanoTime() - lastProgress >= progressInterval.toNanos()) {
+                    lastProgress = System.nanoTime();
+                    log.info("Importing products: {} lines read, {} imported, {} rejected, {} rows/s", lines, imported,
+                            rejected, imported * 1_000_000_000L / Math.max(1, lastProgress - start));
+                }
+            }
+        } finally {
+            // a reader still waiting for room in the queue sees the flag after its put and ends
+            stopped.set(true);
+            parsed.clear();
+        }
+
+        long nanos = System.nanoTime() - start;
+        imports.record(nanos, TimeUnit.NANOSECONDS);
+        ImportReport report = new ImportReport(lines, imported, rejected, completed, TimeUnit.NANOSECONDS.toMillis(nanos), errors);
+        log.info("Imported {} products from {} lines, {} rejected, in {} ms, {} rows/s", imported, lines, rejected,
+                report.getMillis(), report.getRowsPerSecond());
+        return report;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        parsers.shutdownNow();
+    }
+
+    // the next chunk in file order, waiting for it to be parsed. rethrows the read failure the reader queued
+    private static ParsedChunk take(BlockingQueue<Future<ParsedChunk>> parsed) throws IOException {
+        try {
+            return parsed.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException("Parsing the import failed", e.getCause());
+        }
+    }
+
+    // cut the input into chunks of chunk-size lines and hand each to the parsers. the queue takes the parse in
+    // progress, so the order of the chunks is kept while they are parsed in parallel
+    private void read(BufferedReader reader, long firstLine, LineParser parser,
+                      BlockingQueue<Future<ParsedChunk>> parsed, AtomicBoolean stopped) {
+        try {
+            long lineNumber = firstLine;
+            List<String> lines = new ArrayList<>(chunkSize);
+            String line;
+            while (!stopped.get() && (line = reader.readLine()) != null) {
+                lines.add(line);
+                if (lines.size() == chunkSize) {
+                    put(parsed, parse(lineNumber, lines, parser), stopped);
+                    lineNumber += lines.size();
+                    lines = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!lines.isEmpty()) {
+                put(parsed, parse(lineNumber, lines, parser), stopped);
+            }
+            put(parsed, CompletableFuture.completedFuture(END), stopped);
+        } catch (IOException e) {
+            try {
+                put(parsed, CompletableFuture.failedFuture(e), stopped);
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // wait for room in the queue, unless the import has stopped and nobody takes from it any more
+    private static void put(BlockingQueue<Future<ParsedChunk>> parsed, Future<ParsedChunk> item, AtomicBoolean stopped)
+            throws InterruptedException {
+        while (!stopped.get() && !parsed.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            // the calling thread is still saving the chunks before it
+        }
+    }
+
+    private Future<ParsedChunk> parse(long firstLine, List<String> lines, LineParser parser) {
+        return CompletableFuture.supplyAsync(() -> {
+            List<Product> products = new ArrayList<>(lines.size());
+            List<ImportReport.LineError> errors = new ArrayList<>();
+            int rows = 0;
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (line.isBlank()) {
+                    continue;
+                }
+                rows++;
+                try {
+                    Product product = parser.parse(line);
+                    String problem = validate(product);
+                    if (problem == null) {
+                        products.add(product);
+                    } else {
+                        errors.add(new ImportReport.LineError(firstLine + i, problem));
+                    }
+                } catch (IllegalArgumentException e) {
+                    errors.add(new ImportReport.LineError(firstLine + i, e.getMessage()));
+                }
+            }
+            return new ParsedChunk(firstLine, firstLine + lines.size() - 1, rows, products, errors);
+        }, parsers);
+    }
+
+    // the checks the database would otherwise fail the whole chunk for, and a stock below zero
+    private static String validate(Product product) {
+        if (product.getName() == null || product.getName().isBlank()) {
+            return "name is missing";
+        }
+        if (product.getName().length() > MAX_NAME_LENGTH) {
+            return "name is longer than " + MAX_NAME_LENGTH + " characters";
+        }
+        if (product.getQuantity() < 0) {
+            return "quantity is negative";
+        }
+        return null;
+    }
+
+    private Product parseJson(String line) {
+        try {
+            JsonNode node = productReader.readTree(line);
+            if (node == null || !node.isObject()) {
+                throw new IllegalArgumentException("not a product object");
+            }
+            // the quantity of a product is a number that defaults to 0, a line without one is rejected like a csv
+            // line with an empty quantity instead of being imported out of stock
+            if (!node.hasNonNull("quantity")) {
+                throw new IllegalArgumentException("quantity is missing");
+            }
+            Product product = productReader.treeToValue(node, Product.class);
+            return new Product(product.getName(), product.getQuantity());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("not a product object: " + e.getOriginalMessage());
+        }
+    }
+
+    // turns one line into a product, fails with IllegalArgumentException saying what is wrong with it
+    private interface LineParser {
+        Product parse(String line);
+    }
+
+    // the columns of a csv file, from its header. a field can be in double quotes, with "" for a quote in it.
+    // a line break inside a quoted field is not supported, the field is reported as not closed
+    private static class CsvHeader implements LineParser {
+        private final int columns;
+        private final int nameColumn;
+        private final int quantityColumn;
+
+        private CsvHeader(String header) {
+            if (header == null) {
+                throw new IllegalArgumentException("the csv file is empty, it needs a header with name and quantity columns");
+            }
+            // a byte order mark some editors put in front of the header
+            if (header.startsWith("\uFEFF")) {
+                header = header.substring(1);
+            }
+            List<String> names = new ArrayList<>();
+            String problem = split(header, names);
+            if (problem != null) {
+                throw new IllegalArgumentException("the csv header cannot be read: " + problem);
+            }
+            columns = names.size();
+            int name = -1;
+            int quantity = -1;
+            for (int i = 0; i < names.size(); i++) {
+                String column = names.get(i).trim().toLowerCase(Locale.ROOT);
+                if (column.equals("name")) {
+                    name = i;
+                } else if (column.equals("quantity")) {
+                    quantity = i;
+                }
+            }
+            if (name < 0 || quantity < 0) {
+                throw new IllegalArgumentException("the csv header needs name and quantity columns, it has " + names);
+            }
+            nameColumn = name;
+            quantityColumn = quantity;
+        }
+
+        @Override
+        public Product parse(String line) {
+            List<String> fields = new ArrayList<>(columns);
+            String problem = split(line, fields);
+            if (problem != null) {
+                throw new IllegalArgumentException(problem);
+            }
+            if (fields.size() != columns) {
+                throw new IllegalArgumentException("expected " + columns + " fields, found " + fields.size());
+            }
+            String quantity = fields.get(quantityColumn).trim();
+            try {
+                return new Product(fields.get(nameColumn), Integer.parseInt(quantity));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("quantity is not a whole number: '" + quantity + "'");
+            }
+        }
+
+        // add the fields of the line to the list, returns what is wrong with the line or null
+        private static String split(String line, List<String> fields) {
+            int length = line.length();
+            int i = 0;
+            while (true) {
+                if (i < length && line.charAt(i) == '"') {
+                    // copied a run between quotes at a time, a field without "" in it is one substring
+                    StringBuilder field = null;
+                    int from = i + 1;
+                    while (true) {
+                        int quote = line.indexOf('"', from);
+                        if (quote < 0) {
+                            return "a quoted field is not closed";
+                        }
+                        i = quote + 1;
+                        if (i < length && line.charAt(i) == '"') {
+                            field = (field == null ? new StringBuilder() : field).append(line, from, i);
+                            from = i + 1;
+                            continue;
+                        }
+                        fields.add(field == null ? line.substring(from, quote) : field.append(line, from, quote).toString());
+                        break;
+                    }
+                    if (i < length && line.charAt(i) != ',') {
+                        return "text after the closing quote of field " + fields.size();
+                    }
+                } else {
+                    int comma = line.indexOf(',', i);
+                    int end = comma < 0 ? length : comma;
+                    fields.add(line.substring(i, end));
+                    i = end;
+                }
+                if (i >= length) {
+                    return null;
+                }
+                // past the comma
+                i++;
+            }
+        }
+    }
+
+    // the products of a chunk that passed the checks, and the lines that did not. rows counts the non-blank lines
+    private static class ParsedChunk {
+        private final long firstLine;
+        private final long lastLine;
+        private final int rows;
+        private final List<Product> products;
+        private final List<ImportReport.LineError> errors;
+
+        private ParsedChunk(long firstLine, long lastLine, int rows, List<Product> products, List<ImportReport.LineError> errors) {
+            this.firstLine = firstLine;
+            this.lastLine = lastLine;
+            this.rows = rows;
+            this.products = products;
+            this.errors = errors;
+        }
+    }
+}
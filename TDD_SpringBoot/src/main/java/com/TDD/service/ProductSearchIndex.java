@@ -0,0 +1,333 @@
+package com.TDD.service;
+
+import com.TDD.model.Product;
+import com.TDD.repository.ProductRepository;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// in memory inverted index of the product names. every name is split into lower case words (tokens) and each
+// token points to the products that have it. a search matches the query words exactly, as a prefix of a name
+// word, or with one or two typos, and ranks the products by how well all of the query words matched.
+// the index is loaded from the repository at startup and ProductServiceImpl keeps it up to date on writes
+@Component
+public class ProductSearchIndex implements SmartInitializingSingleton {
+
+    // score of a query word that matched a name word exactly, as its prefix, or within the allowed typos
+    private static final int EXACT_SCORE = 3;
+    private static final int PREFIX_SCORE = 2;
+    private static final int FUZZY_SCORE = 1;
+
+    @Autowired(required = false)
+    private ProductRepository productRepository;
+
+    // products are numbered with dense slots so the postings can hold ints and a search can score into arrays
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    private long[] idBySlot = new long[1024];
+    // tokens of each product, needed to take the product out of the postings when it changes
+    private String[][] tokensBySlot = new String[1024][];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeSlotCount;
+
+    // token to the sorted slots of the products that have it. sorted by token for prefix and typo lookups
+    private final TreeMap<String, Postings> postings = new TreeMap<>();
+
+    // many searches can run at once, a write waits for them and blocks them while it changes the index
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // load the index once all beans exist, so hibernate has created the table, and before the web server
+    // starts, so no write can be missed while it loads
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (productRepository != null) {
+            productRepository.streamAll(this::put);
+        }
+    }
+
+    // add the product, or replace its name if it is already indexed. the name is always replaced: a plain update
+    // may write a lower version than the indexed one, so the version cannot tell which name is newer. writes to a
+    // product are put in the order the service made them
+    public void put(Product product) {
+        String[] tokens = tokenize(product.getName());
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.get(product.getId());
+            if (slot != null) {
+                removeTokens(slot);
+            } else {
+                slot = newSlot();
+                slotById.put(product.getId(), slot);
+                idBySlot[slot] = product.getId();
+            }
+            for (int i = 0; i < tokens.length; i++) {
+                Postings tokenPostings = postings.get(tokens[i]);
+                if (tokenPostings == null) {
+                    tokenPostings = new Postings();
+                    postings.put(tokens[i], tokenPostings);
+                } else {
+                    // share one string per token between all the products that have it
+                    tokens[i] = postings.ceilingKey(tokens[i]);
+                }
+                tokenPostings.add(slot);
+            }
+            tokensBySlot[slot] = tokens;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotById.remove(id);
+            if (slot == null) {
+                return;
+            }
+            removeTokens(slot);
+            tokensBySlot[slot] = null;
+            if (freeSlotCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlotCount * 2);
+            }
+            freeSlots[freeSlotCount++] = slot;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ids of the best matching products, best first. products matching more of the query words come first,
+    // then products whose words matched more closely, then shorter names
+    public List<Long> search(String query, int limit) {
+        String[] terms = tokenize(query);
+        if (terms.length == 0 || limit <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            int[] scores = new int[slotCount];
+            // the last term that scored a product, so each term only counts once per product with its best match
+            int[] scoredByTerm = new int[slotCount];
+            Postings touched = new Postings();
+            for (int term = 0; term < terms.length; term++) {
+                String text = terms[term];
+                // best match first, a product already scored for this term is skipped by the weaker matches
+                Postings exact = postings.get(text);
+                if (exact != null) {
+                    score(exact, EXACT_SCORE, term + 1, scores, scoredByTerm, touched);
+                }
+                for (Map.Entry<String, Postings> entry : postings.subMap(text, false, text + Character.MAX_VALUE, false).entrySet()) {
+                    score(entry.getValue(), PREFIX_SCORE, term + 1, scores, scoredByTerm, touched);
+                }
+                int maxTypos = maxTypos(text);
+                if (maxTypos > 0) {
+                    // like most fuzzy search engines the first letter has to be right, which keeps the words
+                    // to compare down to one slice of the sorted tokens
+                    String first = text.substring(0, 1);
+                    NavigableMap<String, Postings> sameFirstLetter = postings.subMap(first, true, first + Character.MAX_VALUE, false);
+                    for (Map.Entry<String, Postings> entry : sameFirstLetter.entrySet()) {
+                        String token = entry.getKey();
+                        if (!token.equals(text) && !token.startsWith(text) && withinTypos(text, token, maxTypos)) {
+                            score(entry.getValue(), FUZZY_SCORE, term + 1, scores, scoredByTerm, touched);
+                        }
+                    }
+                }
+            }
+            return best(touched, scores, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // number of indexed products
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // lower case words of the text, split on everything that is not a letter or a digit
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                String token = text.substring(start, i).toLowerCase(Locale.ROOT);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    // short words must be spelled right, longer words may have one typo and long words two
+    private static int maxTypos(String term) {
+        if (term.length() < 4) {
+            return 0;
+        }
+        return term.length() < 8 ? 1 : 2;
+    }
+
+    // edit distance of at most maxTypos, counting a swap of two neighbouring letters as one typo.
+    // only the band of the distance table near the diagonal is computed and it stops as soon as a row is over
+    static boolean withinTypos(String a, String b, int maxTypos) {
+        if (Math.abs(a.length() - b.length()) > maxTypos) {
+            return false;
+        }
+        int over = maxTypos + 1;
+        int[] previousPrevious = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            Arrays.fill(current, over);
+            current[0] = i;
+            int from = Math.max(1, i - maxTypos);
+            int to = Math.min(b.length(), i + maxTypos);
+            int rowMinimum = current[0];
+            for (int j = from; j <= to; j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, previousPrevious[j - 2] + 1);
+                }
+                current[j] = Math.min(distance, over);
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (rowMinimum > maxTypos) {
+                return false;
+            }
+            int[] recycled = previousPrevious;
+            previousPrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        return previous[b.length()] <= maxTypos;
+    }
+
+    private static void score(Postings matches, int score, int term, int[] scores, int[] scoredByTerm, Postings touched) {
+        for (int i = 0; i < matches.size; i++) {
+            int slot = matches.slots[i];
+            if (scoredByTerm[slot] == term) {
+                continue;
+            }
+            if (scores[slot] == 0) {
+                touched.append(slot);
+            }
+            scoredByTerm[slot] = term;
+            // a matched word is worth more than any closeness of the words, so products matching more of
+            // the query always rank first
+            scores[slot] += 100 + score;
+        }
+    }
+
+    // the limit highest scored products, kept in a small heap with the worst of them on top
+    private List<Long> best(Postings touched, int[] scores, int limit) {
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, (a, b) -> -compareRank(a, b, scores));
+        for (int i = 0; i < touched.size; i++) {
+            top.add(touched.slots[i]);
+            if (top.size() > limit) {
+                top.poll();
+            }
+        }
+        Long[] ids = new Long[top.size()];
+        for (int i = ids.length - 1; i >= 0; i--) {
+            ids[i] = idBySlot[top.poll()];
+        }
+        return new ArrayList<>(Arrays.asList(ids));
+    }
+
+    // negative when product a ranks before product b
+    private int compareRank(int a, int b, int[] scores) {
+        if (scores[a] != scores[b]) {
+            return Integer.compare(scores[b], scores[a]);
+        }
+        if (tokensBySlot[a].length != tokensBySlot[b].length) {
+            return Integer.compare(tokensBySlot[a].length, tokensBySlot[b].length);
+        }
+        return Long.compare(idBySlot[a], idBySlot[b]);
+    }
+
+    private void removeTokens(int slot) {
+        for (String token : tokensBySlot[slot]) {
+            Postings tokenPostings = postings.get(token);
+            tokenPostings.remove(slot);
+            if (tokenPostings.size == 0) {
+                postings.remove(token);
+            }
+        }
+    }
+
+    private int newSlot() {
+        if (freeSlotCount > 0) {
+            return freeSlots[--freeSlotCount];
+        }
+        if (slotCount == idBySlot.length) {
+            int capacity = slotCount * 2;
+            idBySlot = Arrays.copyOf(idBySlot, capacity);
+            tokensBySlot = Arrays.copyOf(tokensBySlot, capacity);
+        }
+        return slotCount++;
+    }
+
+    // sorted set of slots in a growing int array, much smaller than a set of boxed integers
+    private static final class Postings {
+        private int[] slots = new int[2];
+        private int size;
+
+        void add(int slot) {
+            // slots are mostly handed out in increasing order, so this is usually an append
+            if (size == 0 || slots[size - 1] < slot) {
+                append(slot);
+                return;
+            }
+            int index = Arrays.binarySearch(slots, 0, size, slot);
+            if (index >= 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            append(0);
+            System.arraycopy(slots, insertAt, slots, insertAt + 1, size - 1 - insertAt);
+            slots[insertAt] = slot;
+        }
+
+        void append(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size + (size >> 1) + 1);
+            }
+            slots[size++] = slot;
+        }
+
+        void remove(int slot) {
+            int index = Arrays.binarySearch(slots, 0, size, slot);
+            if (index >= 0) {
+                System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+                size--;
+            }
+        }
+    }
+}
@@ -1,24 +1,73 @@
 package com.TDD.service;
 
+import com.TDD.model.BatchItemResult;
 import com.TDD.model.Product;
+import com.TDD.model.ProductQuery;
+import com.TDD.model.UpdateResult;
 import org.springframework.stereotype.Service;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 @Service
 public interface ProductService {
     // get a product by its id
     Optional<Product> findbyId(Long id);
 
+    // get many products by id with a few queries, one result per id in request order, not found ones included
+    List<BatchItemResult> findAllByIds(List<Long> ids);
+
+    // get only the version of a product, enough to check an etag
+    Optional<Integer> findVersion(Long id);
+
+    // a tag that changes whenever a product is created, modified or deleted through this service
+    String productsVersion();
+
     // get all products from the database
     List<Product> findAll();
 
+    // get up to limit products whose names best match the words of the query, allowing prefixes and typos
+    List<Product> search(String query, int limit);
+
+    // get the products matching the query, filtered, sorted and limited by the database
+    List<Product> findAll(ProductQuery query);
+
+    // get only the given fields and the id of the products matching the query
+    List<Map<String, Object>> findAll(ProductQuery query, List<String> fields);
+
+    // get up to limit products with an id greater than the cursor, ordered by id
+    List<Product> findAfter(long after, int limit);
+
+    // pass every product to the consumer as it is read from the database
+    void streamAll(Consumer<Product> consumer);
+
     //update the product
     boolean update(Product product);
 
+    // update the product only if it still has the expected version, the version is then increased by one
+    UpdateResult updateIfVersion(Product product, int expectedVersion);
+
+    // add delta to the quantity of the product in one statement and increase its version. empty when the
+    // product does not exist or the quantity would go below zero
+    Optional<Product> adjustQuantity(Long id, int delta);
+
+    // queue the quantity change to be written later with the other changes to the product, when write-behind is
+    // on. false when it is off and the change has to be made with adjustQuantity
+    boolean queueQuantityChange(Long id, int delta);
+
     // save the product
     Product save(Product product);
 
     // delete the product
     boolean delete(Long id);
+
+    // save the products in jdbc batches, the result holds the generated id of each product
+    List<BatchItemResult> saveAll(List<Product> products);
+
+    // update the products in jdbc batches, the result tells which products were not found
+    List<BatchItemResult> updateAll(List<Product> products);
+
+    // delete the products in jdbc batches, the result tells which products were not found
+    List<BatchItemResult> deleteAll(List<Long> ids);
 }
@@ -1,43 +1,320 @@
 package com.TDD.service;
 
+import com.TDD.model.BatchItemResult;
 import com.TDD.model.Product;
+import com.TDD.model.ProductChange;
+import com.TDD.model.ProductQuery;
+import com.TDD.model.UpdateResult;
 import com.TDD.repository.ProductRepository;
+import com.TDD.repository.ProductWriteAheadLog;
+import com.TDD.repository.ProductWriteLocks;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 @Component
 public class  ProductServiceImpl implements ProductService {
     @Autowired
   private ProductRepository productRepository;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    // name search, updated after every write
+    @Autowired
+    private ProductSearchIndex searchIndex;
+    // merges quantity changes and writes them in batches, only there when product.write-behind.enabled is true
+    @Autowired(required = false)
+    private ProductWriteBehind writeBehind;
+    // every successful write is published here, the products etag is its latest sequence
+    @Autowired
+    private ProductChangeFeed changeFeed;
+    // every write is logged before it is answered, only there when product.wal.enabled is true
+    @Autowired(required = false)
+    private ProductWriteAheadLog writeAheadLog;
+    // orders the writes to a product when there is no write-ahead log to do it
+    private final ProductWriteLocks writeLocks = new ProductWriteLocks();
+    // number of products returned by each findAll call
+    private DistributionSummary findAllSize;
+    // prefix of the products etag, drawn once per start. the feed sequence starts from the clock, which can step
+    // back or repeat between two starts, the epoch keeps a tag handed out before a restart from matching again
+    private final String epoch = Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36);
+
+    @PostConstruct
+    public void registerMetrics() {
+        findAllSize = DistributionSummary.builder("product.findall.size")
+                .description("Number of products returned by findAll")
+                .baseUnit("products")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        if (writeBehind != null) {
+            // the rows a flush updated are not read back, the feed only says which products changed
+            writeBehind.onFlush(id -> {
+                if (writeAheadLog != null) {
+                    // the log needs the whole product, read under its lock it is the newest one
+                    writeAheadLog.locked(List.of(id), () -> {
+                        productRepository.findById(id).ifPresentOrElse(writeAheadLog::put, () -> writeAheadLog.delete(id));
+                        return null;
+                    });
+                }
+                changeFeed.publish(ProductChange.Type.UPDATED, id, null);
+            });
+        }
+    }
 
     // if the product does not exist, it will return null;
+    @Timed(value = "product.service", histogram = true)
     @Override
     public Optional<Product> findbyId(Long id) {
        return productRepository.findById(id);
     }
+
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public List<BatchItemResult> findAllByIds(List<Long> ids) {
+        Map<Long, Product> found = new HashMap<>();
+        for (Product product : productRepository.findAllByIds(ids)) {
+            found.put(product.getId(), product);
+        }
+        List<BatchItemResult> results = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Product product = found.get(ids.get(i));
+            results.add(product != null
+                    ? new BatchItemResult(i, ids.get(i), BatchItemResult.Status.FOUND, product)
+                    : new BatchItemResult(i, ids.get(i), BatchItemResult.Status.NOT_FOUND));
+        }
+        return results;
+    }
+
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public Optional<Integer> findVersion(Long id) {
+        return productRepository.findVersion(id);
+    }
+
+    // callers read the tag before the products, and writes are published after the database is changed, so a
+    // tag can only ever be paired with products at least as new as it
+    @Override
+    public String productsVersion() {
+        return epoch + "-" + changeFeed.latestSequence();
+    }
     // get all the products from the database
+    @Timed(value = "product.service", histogram = true)
     @Override
     public List<Product> findAll() {
-        return productRepository.findAll();
+        List<Product> products = productRepository.findAll();
+        findAllSize.record(products.size());
+        return products;
+    }
+
+    // search the product names in the in memory index, the products are then read by id in one go and put
+    // back in rank order
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public List<Product> search(String query, int limit) {
+        List<Long> ids = searchIndex.search(query, limit);
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Product> found = new HashMap<>();
+        for (Product product : productRepository.findAllByIds(ids)) {
+            found.put(product.getId(), product);
+        }
+        List<Product> products = new ArrayList<>(found.size());
+        for (Long id : ids) {
+            // a product deleted since the search is left out
+            Product product = found.get(id);
+            if (product != null) {
+                products.add(product);
+            }
+        }
+        return products;
+    }
+
+    // search the products, the database does the filtering
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public List<Product> findAll(ProductQuery query) {
+        return productRepository.findAll(query);
+    }
+
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public List<Map<String, Object>> findAll(ProductQuery query, List<String> fields) {
+        return productRepository.findAll(query, fields);
+    }
+
+    // get one page of products after the cursor
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public List<Product> findAfter(long after, int limit) {
+        return productRepository.findAfter(after, limit);
+    }
+
+    // stream the products without loading them all into memory
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public void streamAll(Consumer<Product> consumer) {
+        productRepository.streamAll(consumer);
     }
 
 
+    @Timed(value = "product.service", histogram = true)
     @Override
     public boolean update(Product product) {
-        return productRepository.update(product);
+        return logged(List.of(product.getId()), () -> {
+            boolean updated = productRepository.update(product);
+            if (updated) {
+                changed(ProductChange.Type.UPDATED, product);
+            }
+            return updated;
+        });
+    }
+
+
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public UpdateResult updateIfVersion(Product product, int expectedVersion) {
+        return logged(List.of(product.getId()), () -> {
+            UpdateResult result = productRepository.updateIfVersion(product, expectedVersion);
+            if (result == UpdateResult.UPDATED) {
+                changed(ProductChange.Type.UPDATED, product);
+            }
+            return result;
+        });
+    }
+
+
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public Optional<Product> adjustQuantity(Long id, int delta) {
+        return logged(List.of(id), () -> {
+            Optional<Product> updated = productRepository.adjustQuantity(id, delta);
+            updated.ifPresent(product -> changed(ProductChange.Type.UPDATED, product));
+            return updated;
+        });
     }
 
+    @Override
+    public boolean queueQuantityChange(Long id, int delta) {
+        if (writeBehind == null) {
+            return false;
+        }
+        writeBehind.add(id, delta);
+        return true;
+    }
 
+    @Timed(value = "product.service", histogram = true)
     @Override
     public Product save(Product product) {
-        return productRepository.save(product);
+        return logged(List.of(), () -> {
+            Product savedProduct = productRepository.save(product);
+            changed(ProductChange.Type.CREATED, savedProduct);
+            return savedProduct;
+        });
     }
 
+    @Timed(value = "product.service", histogram = true)
     @Override
     public boolean delete(Long id) {
-        return productRepository.delete(id);
+        return logged(List.of(id), () -> {
+            boolean deleted = productRepository.delete(id);
+            searchIndex.remove(id);
+            if (deleted) {
+                deleted(id);
+            }
+            return deleted;
+        });
+    }
+
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public List<BatchItemResult> saveAll(List<Product> products) {
+        return logged(List.of(), () -> {
+            List<Product> savedProducts = productRepository.saveAll(products);
+            List<BatchItemResult> results = new ArrayList<>(savedProducts.size());
+            for (int i = 0; i < savedProducts.size(); i++) {
+                changed(ProductChange.Type.CREATED, savedProducts.get(i));
+                results.add(new BatchItemResult(i, savedProducts.get(i).getId(), BatchItemResult.Status.CREATED));
+            }
+            return results;
+        });
+    }
+
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public List<BatchItemResult> updateAll(List<Product> products) {
+        List<Long> ids = new ArrayList<>(products.size());
+        products.forEach(product -> ids.add(product.getId()));
+        return logged(ids, () -> {
+            int[] counts = productRepository.updateAll(products);
+            List<BatchItemResult> results = new ArrayList<>(counts.length);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 1) {
+                    changed(ProductChange.Type.UPDATED, products.get(i));
+                }
+                results.add(new BatchItemResult(i, products.get(i).getId(),
+                        counts[i] == 1 ? BatchItemResult.Status.UPDATED : BatchItemResult.Status.NOT_FOUND));
+            }
+            return results;
+        });
+    }
+
+    @Timed(value = "product.service", histogram = true)
+    @Override
+    public List<BatchItemResult> deleteAll(List<Long> ids) {
+        return logged(ids, () -> {
+            int[] counts = productRepository.deleteAll(ids);
+            ids.forEach(searchIndex::remove);
+            List<BatchItemResult> results = new ArrayList<>(counts.length);
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] == 1) {
+                    deleted(ids.get(i));
+                }
+                results.add(new BatchItemResult(i, ids.get(i),
+                        counts[i] == 1 ? BatchItemResult.Status.DELETED : BatchItemResult.Status.NOT_FOUND));
+            }
+            return results;
+        });
+    }
+
+    // a product was created or changed in the database: the search index takes the new name, the product is
+    // logged and the change is published to the feed
+    private void changed(ProductChange.Type type, Product product) {
+        searchIndex.put(product);
+        if (writeAheadLog != null) {
+            writeAheadLog.put(product);
+        }
+        changeFeed.publish(type, product.getId(), product);
+    }
+
+    private void deleted(long id) {
+        if (writeAheadLog != null) {
+            writeAheadLog.delete(id);
+        }
+        changeFeed.publish(ProductChange.Type.DELETED, id, null);
+    }
+
+    // run a write under the locks of the products it changes, so the index, the log and the feed take the changes
+    // of a product in the order the database made them. with the write-ahead log the log's locks are taken and
+    // the write then waits until its records are on disk
+    private <T> T logged(Collection<Long> ids, Supplier<T> write) {
+        if (writeAheadLog == null) {
+            return writeLocks.locked(ids, write);
+        }
+        T result = writeAheadLog.locked(ids, write);
+        writeAheadLog.awaitDurable();
+        return result;
     }
 }
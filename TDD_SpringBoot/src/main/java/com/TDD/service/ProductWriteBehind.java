@@ -0,0 +1,221 @@
+package com.TDD.service;
+
+import com.TDD.repository.ProductRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+// write-behind buffer for quantity changes, switched on with product.write-behind.enabled. changes to the same
+// product are added up in memory and written as one row of a jdbc batch, at the latest flush-interval after
+// they were made or as soon as max-pending products are waiting. a queued change is not in the database yet:
+// reads can miss it for up to flush-interval and it is lost if the process dies before the flush. the stock
+// guard is checked against the sum of the changes when they are written, a sum that would take the quantity
+// below zero is dropped as a whole and counted as rejected
+@Component
+@ConditionalOnProperty(name = "product.write-behind.enabled", havingValue = "true")
+public class ProductWriteBehind {
+
+    private static final Logger log = LoggerFactory.getLogger(ProductWriteBehind.class);
+
+    // value of a pending sum the flush has taken. an add that finds it starts a new sum for the product
+    private static final long TAKEN = Long.MIN_VALUE;
+
+    private final ProductRepository productRepository;
+    private final int maxPending;
+    private final boolean flushOnShutdown;
+
+    // product id to the sum of its waiting changes. the map locks per bin and a sum is changed with
+    // compare and set, so adds to different products never wait for each other and adds to one product never block
+    private final ConcurrentHashMap<Long, AtomicLong> pending = new ConcurrentHashMap<>();
+    // number of changes waiting, against the number of products they are merged into
+    private final LongAdder pendingChanges = new LongAdder();
+    // time the oldest waiting change was made, 0 when nothing is waiting
+    private final AtomicLong oldestPendingNanos = new AtomicLong();
+
+    private final ScheduledExecutorService flusher;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // one flush at a time, from the timer, a full buffer or shutdown
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // told the id of every product a flush updated, the service publishes them as changes
+    private volatile LongConsumer flushListener = id -> { };
+
+    private final DistributionSummary changesPerFlush;
+    private final DistributionSummary rowsPerFlush;
+    private final Counter rejectedRows;
+    private final Counter failedFlushes;
+
+    // constructor
+    public ProductWriteBehind(ProductRepository productRepository,
+                              MeterRegistry meterRegistry,
+                              @Value("${product.write-behind.flush-interval:100ms}") Duration flushInterval,
+                              @Value("${product.write-behind.max-pending:1000}") int maxPending,
+                              @Value("${product.write-behind.flush-on-shutdown:true}") boolean flushOnShutdown) {
+        this.productRepository = productRepository;
+        this.maxPending = maxPending;
+        this.flushOnShutdown = flushOnShutdown;
+
+        Gauge.builder("product.writebehind.pending", pending, Map::size)
+                .description("Products with quantity changes waiting to be written")
+                .baseUnit("products")
+                .register(meterRegistry);
+        Gauge.builder("product.writebehind.pending.changes", pendingChanges, LongAdder::sum)
+                .description("Quantity changes waiting to be written")
+                .baseUnit("changes")
+                .register(meterRegistry);
+        Gauge.builder("product.writebehind.staleness", this, writeBehind -> writeBehind.stalenessMillis())
+                .description("Age of the oldest quantity change waiting to be written")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        changesPerFlush = DistributionSummary.builder("product.writebehind.flush.changes")
+                .description("Quantity changes written by one flush")
+                .baseUnit("changes")
+                .register(meterRegistry);
+        rowsPerFlush = DistributionSummary.builder("product.writebehind.flush.rows")
+                .description("Rows updated by one flush, each holds the merged changes of one product")
+                .baseUnit("rows")
+                .register(meterRegistry);
+        rejectedRows = Counter.builder("product.writebehind.rejected")
+                .description("Merged changes dropped because the product was missing or the stock would go below zero")
+                .register(meterRegistry);
+        failedFlushes = Counter.builder("product.writebehind.flush.failures")
+                .description("Flushes that failed and were put back to be retried")
+                .register(meterRegistry);
+
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "product-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalNanos = flushInterval.toNanos();
+        flusher.scheduleWithFixedDelay(this::flush, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    // queue a change to the quantity of the product
+    public void add(long id, long delta) {
+        merge(id, delta);
+        pendingChanges.increment();
+        oldestPendingNanos.compareAndSet(0, System.nanoTime());
+        // a full buffer is flushed now instead of at the next tick, the flag keeps it to one extra flush
+        if (pending.size() >= maxPending && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushRequested.set(false);
+                flush();
+            });
+        }
+    }
+
+    public void onFlush(LongConsumer listener) {
+        this.flushListener = listener;
+    }
+
+    // write all waiting changes, one row per product
+    public void flush() {
+        flushLock.lock();
+        try {
+            // reset before taking the sums, a change made meanwhile is either taken now or starts the clock again
+            oldestPendingNanos.set(0);
+            long changes = pendingChanges.sumThenReset();
+            // sorted by id so every flush locks the rows in the same order
+            Map<Long, Long> deltas = new TreeMap<>();
+            for (Map.Entry<Long, AtomicLong> entry : pending.entrySet()) {
+                long delta = entry.getValue().getAndSet(TAKEN);
+                pending.remove(entry.getKey(), entry.getValue());
+                if (delta != 0) {
+                    deltas.put(entry.getKey(), delta);
+                }
+            }
+            if (deltas.isEmpty()) {
+                return;
+            }
+
+            int[] counts;
+            try {
+                counts = productRepository.adjustQuantityAll(deltas);
+            } catch (RuntimeException e) {
+                // the batch runs in one transaction, so nothing was written. put the sums back so the next flush
+                // tries again
+                failedFlushes.increment();
+                log.warn("Writing {} product quantity changes failed, they are kept for the next flush", deltas.size(), e);
+                deltas.forEach(this::merge);
+                pendingChanges.add(changes);
+                oldestPendingNanos.compareAndSet(0, System.nanoTime());
+                return;
+            }
+
+            changesPerFlush.record(changes);
+            rowsPerFlush.record(deltas.size());
+            int i = 0;
+            for (Long id : deltas.keySet()) {
+                if (counts[i++] == 0) {
+                    rejectedRows.increment();
+                } else {
+                    flushListener.accept(id);
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    // number of products with waiting changes
+    public int pendingProducts() {
+        return pending.size();
+    }
+
+    // stop the timer, and write what is waiting unless product.write-behind.flush-on-shutdown is false.
+    // runs before the data source is closed, the repository is a dependency of this bean
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flushOnShutdown) {
+            flush();
+        } else if (!pending.isEmpty()) {
+            log.warn("Dropping quantity changes of {} products on shutdown", pending.size());
+        }
+    }
+
+    private void merge(long id, long delta) {
+        while (true) {
+            AtomicLong sum = pending.computeIfAbsent(id, key -> new AtomicLong());
+            long current = sum.get();
+            if (current == TAKEN) {
+                // the flush took this sum and is removing it, help remove it and start a new one
+                pending.remove(id, sum);
+                continue;
+            }
+            if (sum.compareAndSet(current, current + delta)) {
+                return;
+            }
+        }
+    }
+
+    private double stalenessMillis() {
+        long oldest = oldestPendingNanos.get();
+        return oldest == 0 ? 0 : (System.nanoTime() - oldest) / 1_000_000.0;
+    }
+}
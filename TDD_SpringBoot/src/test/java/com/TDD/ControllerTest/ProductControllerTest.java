@@ -1,11 +1,22 @@
 package com.TDD.ControllerTest;
 
+import com.TDD.config.SerializationConfig;
+import com.TDD.model.BatchItemResult;
 import com.TDD.model.Product;
+import com.TDD.model.ProductChange;
+import com.TDD.model.ProductQuery;
+import com.TDD.model.UpdateResult;
+import com.TDD.service.ProductChangeFeed;
 import com.TDD.service.ProductService;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -14,15 +25,29 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.ResultMatcher;
 
 import javax.swing.text.html.Option;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 
+import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -39,6 +64,9 @@ public class ProductControllerTest {
     @Autowired // create the mockito object and automatically inject into the constructor using the @Autowired
     private MockMvc mockMvc;
 
+    @Autowired // the real change feed, the controller reads from it
+    private ProductChangeFeed changeFeed;
+
     // Successful test case
     @Test
     @DisplayName("Get /product/1 - Found")
@@ -70,6 +98,487 @@ public class ProductControllerTest {
 
     } // end of successful test case
 
+    @Test
+    @DisplayName("GET /product/1 - Not modified")
+    void testGetProductNotModified() throws Exception {
+        // the client already has version 1, only the version is looked up
+        doReturn(Optional.of(1)).when(productService).findVersion(1L);
+
+        mockMvc.perform(get("/product/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+
+        verify(productService, never()).findbyId(any());
+    }
+
+    @Test
+    @DisplayName("GET /product/1 - Modified since the etag")
+    void testGetProductModified() throws Exception {
+        // the client has version 1 but the product is now at version 2
+        doReturn(Optional.of(2)).when(productService).findVersion(1L);
+        doReturn(Optional.of(new Product(1, "Product Name", 10, 2))).when(productService).findbyId(1L);
+
+        mockMvc.perform(get("/product/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, "\"1\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""))
+                .andExpect((ResultMatcher) jsonPath("$.version", is(2)));
+    }
+
+    @Test
+    @DisplayName("GET /products - Not modified")
+    void testGetProductsNotModified() throws Exception {
+        doReturn("abc-5").when(productService).productsVersion();
+
+        mockMvc.perform(get("/products").header(HttpHeaders.IF_NONE_MATCH, "\"abc-5\""))
+                .andExpect(status().isNotModified());
+
+        // the products are not read when the tag matches
+        verify(productService, never()).streamAll(any());
+    }
+
+    @Test
+    @DisplayName("GET /products - Etag of the product list")
+    void testGetProductsEtag() throws Exception {
+        doReturn("abc-6").when(productService).productsVersion();
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            consumer.accept(new Product(1, "Product Name", 10, 1));
+            return null;
+        }).when(productService).streamAll(any());
+
+        // the whole list is streamed from the database cursor, the etag is set before the body is written
+        MvcResult result = mockMvc.perform(get("/products").header(HttpHeaders.IF_NONE_MATCH, "\"abc-5\""))
+                .andExpect(request().asyncStarted())
+                .andExpect(header().string(HttpHeaders.ETAG, "W/\"abc-6\""))
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect((ResultMatcher) jsonPath("$[0].id", is(1)));
+        verify(productService, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("GET /products?namePrefix=Pro&sort=quantity,desc - Search")
+    void testSearchProducts() throws Exception {
+        Product mockProduct = new Product(1, "Product Name", 10, 1);
+        doReturn(Collections.singletonList(mockProduct)).when(productService).findAll(any(ProductQuery.class));
+
+        mockMvc.perform(get("/products").param("namePrefix", "Pro").param("sort", "quantity,desc"))
+                .andExpect(status().isOk())
+                .andExpect((ResultMatcher) jsonPath("$[0].name", is("Product Name")));
+
+        // the filters and sort are handed to the service
+        ArgumentCaptor<ProductQuery> query = ArgumentCaptor.forClass(ProductQuery.class);
+        verify(productService).findAll(query.capture());
+        Assertions.assertEquals("Pro", query.getValue().getNamePrefix());
+        Assertions.assertEquals("quantity", query.getValue().getSort());
+        Assertions.assertTrue(query.getValue().isDescending());
+    }
+
+    @Test
+    @DisplayName("GET /products?fields=name&limit=1 - Projection with next page link")
+    void testSearchProductsFields() throws Exception {
+        Map<String, Object> row = new LinkedHashMap<>();
+        row.put("id", 1L);
+        row.put("name", "Product Name");
+        doReturn(Collections.singletonList(row)).when(productService).findAll(any(ProductQuery.class), eq(Arrays.asList("name")));
+
+        mockMvc.perform(get("/products").param("fields", "name").param("limit", "1"))
+                .andExpect(status().isOk())
+                // the filters of this request are kept in the link
+                .andExpect(header().string(HttpHeaders.LINK, "</products?fields=name&after=1&limit=1>; rel=\"next\""))
+                .andExpect((ResultMatcher) jsonPath("$[0].name", is("Product Name")))
+                .andExpect((ResultMatcher) jsonPath("$[0].quantity").doesNotExist());
+    }
+
+    @Test
+    @DisplayName("GET /products?sort=price - Bad request")
+    void testSearchProductsUnknownField() throws Exception {
+        doThrow(new IllegalArgumentException("unknown product field: price")).when(productService).findAll(any(ProductQuery.class));
+
+        mockMvc.perform(get("/products").param("sort", "price"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @DisplayName("GET /products/search?q=prod - Search names")
+    void testSearchNames() throws Exception {
+        doReturn(Collections.singletonList(new Product(1, "Product Name", 10, 1))).when(productService).search("prod", 20);
+
+        mockMvc.perform(get("/products/search").param("q", "prod"))
+                .andExpect(status().isOk())
+                .andExpect((ResultMatcher) jsonPath("$[0].id", is(1)));
+    }
+
+    @Test
+    @DisplayName("PATCH /product/1/quantity - Success")
+    void testUpdateQuantity() throws Exception {
+        doReturn(Optional.of(new Product(1, "Product Name", 7, 2))).when(productService).adjustQuantity(1L, -3);
+
+        mockMvc.perform(patch("/product/{id}/quantity", 1)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"delta\": -3}"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"2\""))
+                .andExpect((ResultMatcher) jsonPath("$.quantity", is(7)));
+    }
+
+    @Test
+    @DisplayName("PATCH /product/1/quantity - Accepted by write-behind")
+    void testUpdateQuantityQueued() throws Exception {
+        doReturn(true).when(productService).queueQuantityChange(1L, 5);
+
+        mockMvc.perform(patch("/product/{id}/quantity", 1)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"delta\": 5}"))
+                .andExpect(status().isAccepted());
+
+        verify(productService, never()).adjustQuantity(any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("PATCH /product/1/quantity - Missing or zero delta")
+    void testUpdateQuantityNoDelta() throws Exception {
+        mockMvc.perform(patch("/product/{id}/quantity", 1)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{}"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(patch("/product/{id}/quantity", 1)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"delta\": 0}"))
+                .andExpect(status().isBadRequest());
+
+        verify(productService, never()).queueQuantityChange(any(), anyInt());
+        verify(productService, never()).adjustQuantity(any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("PATCH /product/1/quantity - Not enough stock")
+    void testUpdateQuantityConflict() throws Exception {
+        doReturn(Optional.empty()).when(productService).adjustQuantity(1L, -30);
+        doReturn(Optional.of(2)).when(productService).findVersion(1L);
+
+        mockMvc.perform(patch("/product/{id}/quantity", 1)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"delta\": -30}"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @DisplayName("PATCH /product/1/quantity - Not found")
+    void testUpdateQuantityNotFound() throws Exception {
+        doReturn(Optional.empty()).when(productService).adjustQuantity(1L, 1);
+        doReturn(Optional.empty()).when(productService).findVersion(1L);
+
+        mockMvc.perform(patch("/product/{id}/quantity", 1)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"delta\": 1}"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @DisplayName("GET /products/changes - changes after since")
+    void testGetChanges() throws Exception {
+        long since = changeFeed.latestSequence();
+        long created = changeFeed.publish(ProductChange.Type.CREATED, 1, new Product(1, "Product Name", 10, 1));
+        long deleted = changeFeed.publish(ProductChange.Type.DELETED, 1, null);
+
+        mockMvc.perform(get("/products/changes").param("since", Long.toString(since))
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(2)))
+                .andExpect(jsonPath("$[0].sequence", is(created)))
+                .andExpect(jsonPath("$[0].type", is("CREATED")))
+                .andExpect(jsonPath("$[0].product.name", is("Product Name")))
+                .andExpect(jsonPath("$[1].sequence", is(deleted)))
+                .andExpect(jsonPath("$[1].type", is("DELETED")));
+    }
+
+    @Test
+    @DisplayName("GET /products/changes - 410 when the changes after since are gone")
+    void testGetChangesGone() throws Exception {
+        mockMvc.perform(get("/products/changes").param("since", "0").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isGone());
+    }
+
+    @Test
+    @DisplayName("GET /products/changes - event stream from a lost sequence gets a reset event")
+    void testStreamChangesReset() throws Exception {
+        MvcResult result = mockMvc.perform(get("/products/changes").header("Last-Event-ID", "0")
+                        .accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().string(containsString("event:reset")));
+    }
+
+    @Test
+    @DisplayName("GET /products?limit=1 - Next page link")
+    void testGetProductsPage() throws Exception {
+        // a full page of products is returned by the service
+        Product mockProduct = new Product(1, "Product Name", 10, 1);
+        doReturn(Collections.singletonList(mockProduct)).when(productService).findAfter(0, 1);
+
+        mockMvc.perform(get("/products").param("limit", "1"))
+                .andExpect(status().isOk())
+                // the cursor for the next page is the last id on this page
+                .andExpect(header().string(HttpHeaders.LINK, "</products?after=1&limit=1>; rel=\"next\""))
+                .andExpect((ResultMatcher) jsonPath("$[0].id", is(1)));
+    }
+
+    @Test
+    @DisplayName("GET /products?after=1&limit=10 - Last page")
+    void testGetProductsLastPage() throws Exception {
+        // fewer products than the limit means there is no next page
+        Product mockProduct = new Product(2, "Product Name", 10, 1);
+        doReturn(Collections.singletonList(mockProduct)).when(productService).findAfter(1, 10);
+
+        mockMvc.perform(get("/products").param("after", "1").param("limit", "10"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.LINK))
+                .andExpect((ResultMatcher) jsonPath("$[0].id", is(2)));
+    }
+
+    @Test
+    @DisplayName("GET /products/stream - Success")
+    void testStreamProducts() throws Exception {
+        // the mock service hands two products to the consumer
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            consumer.accept(new Product(1, "Product 1", 10, 1));
+            consumer.accept(new Product(2, "Product 2", 5, 1));
+            return null;
+        }).when(productService).streamAll(any());
+
+        // the body is written asynchronously, so dispatch the async result before checking it
+        MvcResult result = mockMvc.perform(get("/products/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect((ResultMatcher) jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[1].name", is("Product 2")));
+    }
+
+    @Test
+    @DisplayName("GET /product/1 - CBOR")
+    void testGetProductCbor() throws Exception {
+        doReturn(Optional.of(new Product(1, "Product Name", 10, 1))).when(productService).findbyId((long) 1);
+
+        MvcResult result = mockMvc.perform(get("/product/{id}", 1).accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn();
+
+        // the same fields as the json, decoded with a cbor mapper
+        Product product = new CBORMapper().readValue(result.getResponse().getContentAsByteArray(), Product.class);
+        Assertions.assertEquals("Product Name", product.getName());
+        Assertions.assertEquals(10, product.getQuantity());
+    }
+
+    @Test
+    @DisplayName("GET /products/stream - Smile")
+    void testStreamProductsSmile() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            consumer.accept(new Product(1, "Product 1", 10, 1));
+            consumer.accept(new Product(2, "Product 2", 5, 1));
+            return null;
+        }).when(productService).streamAll(any());
+
+        MvcResult result = mockMvc.perform(get("/products/stream").accept(SerializationConfig.APPLICATION_SMILE))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(SerializationConfig.APPLICATION_SMILE));
+
+        JsonNode products = new SmileMapper().readTree(result.getResponse().getContentAsByteArray());
+        Assertions.assertEquals(2, products.size());
+        Assertions.assertEquals("Product 2", products.get(1).get("name").asText());
+    }
+
+    @Test
+    @DisplayName("POST /products/batch - CBOR request and response")
+    void testCreateProductsCbor() throws Exception {
+        List<Product> postProducts = Arrays.asList(new Product("Product 1", 10), new Product("Product 2", 5));
+        doReturn(Arrays.asList(new BatchItemResult(0, 1, BatchItemResult.Status.CREATED),
+                new BatchItemResult(1, 2, BatchItemResult.Status.CREATED)))
+                .when(productService).saveAll(any());
+        CBORMapper cborMapper = new CBORMapper();
+
+        MvcResult result = mockMvc.perform(post("/products/batch")
+                        .contentType(MediaType.APPLICATION_CBOR)
+                        .accept(MediaType.APPLICATION_CBOR)
+                        .content(cborMapper.writeValueAsBytes(postProducts)))
+                .andExpect(status().isOk())
+                .andReturn();
+
+        JsonNode results = cborMapper.readTree(result.getResponse().getContentAsByteArray());
+        Assertions.assertEquals(2, results.get(1).get("id").asInt());
+        Assertions.assertEquals("CREATED", results.get(1).get("status").asText());
+        ArgumentCaptor<List<Product>> saved = ArgumentCaptor.forClass(List.class);
+        verify(productService).saveAll(saved.capture());
+        Assertions.assertEquals("Product 2", saved.getValue().get(1).getName());
+    }
+
+    @Test
+    @DisplayName("GET /products/export?format=csv - The catalog is streamed as a CSV download")
+    void testExportCsv() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            consumer.accept(new Product(1, "Product, 1", 10, 1));
+            consumer.accept(new Product(2, "Product 2", 5, 3));
+            return null;
+        }).when(productService).streamAll(any());
+
+        MvcResult result = mockMvc.perform(get("/products/export").param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith("text/csv"))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"products.csv\""))
+                .andExpect(content().string("id,name,quantity,version\n1,\"Product, 1\",10,1\n2,Product 2,5,3\n"));
+        verify(productService, never()).findAll();
+    }
+
+    @Test
+    @DisplayName("GET /products/export?format=xml - Unknown export format")
+    void testExportUnknownFormat() throws Exception {
+        mockMvc.perform(get("/products/export").param("format", "xml"))
+                .andExpect(status().isBadRequest());
+
+        verify(productService, never()).streamAll(any());
+    }
+
+    @Test
+    @DisplayName("POST /products/import - CSV lines are saved in batches and reported")
+    void testImportCsv() throws Exception {
+        doReturn(List.of()).when(productService).saveAll(any());
+
+        mockMvc.perform(post("/products/import")
+                        .contentType("text/csv")
+                        .content("name,quantity\nProduct 1,10\nProduct 2,-5\n\"Product, 3\",3\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.lines", is(3)))
+                .andExpect(jsonPath("$.imported", is(2)))
+                .andExpect(jsonPath("$.rejected", is(1)))
+                .andExpect(jsonPath("$.errors[0].line", is(3)))
+                .andExpect(jsonPath("$.errors[0].message", is("quantity is negative")));
+
+        ArgumentCaptor<List<Product>> saved = ArgumentCaptor.forClass(List.class);
+        verify(productService).saveAll(saved.capture());
+        Assertions.assertEquals("Product, 3", saved.getValue().get(1).getName());
+    }
+
+    @Test
+    @DisplayName("POST /products/import - NDJSON lines are saved")
+    void testImportNdjson() throws Exception {
+        doReturn(List.of()).when(productService).saveAll(any());
+
+        mockMvc.perform(post("/products/import")
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .content("{\"name\":\"Product 1\",\"quantity\":10}\n{\"name\":\"Product 2\",\"quantity\":5}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(2)))
+                .andExpect(jsonPath("$.completed", is(true)));
+    }
+
+    @Test
+    @DisplayName("POST /products/import - CSV without a quantity column is a bad request")
+    void testImportCsvBadHeader() throws Exception {
+        mockMvc.perform(post("/products/import")
+                        .contentType("text/csv")
+                        .content("name,stock\nProduct 1,10\n"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.detail", containsString("quantity")));
+
+        verify(productService, never()).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("GET /products?ids=1,3 - Multi-get")
+    void testGetProductsByIds() throws Exception {
+        doReturn(Arrays.asList(new BatchItemResult(0, 1, BatchItemResult.Status.FOUND, new Product(1, "Product 1", 10, 1)),
+                new BatchItemResult(1, 3, BatchItemResult.Status.NOT_FOUND)))
+                .when(productService).findAllByIds(Arrays.asList(1L, 3L));
+
+        mockMvc.perform(get("/products").param("ids", "1,3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("FOUND")))
+                .andExpect(jsonPath("$[0].product.name", is("Product 1")))
+                .andExpect(jsonPath("$[1].id", is(3)))
+                .andExpect(jsonPath("$[1].status", is("NOT_FOUND")))
+                // a not found result has no product field
+                .andExpect(jsonPath("$[1].product").doesNotExist());
+        verify(productService, never()).streamAll(any());
+    }
+
+    @Test
+    @DisplayName("POST /products/lookup - Multi-get with the ids in the body")
+    void testLookupProducts() throws Exception {
+        doReturn(Arrays.asList(new BatchItemResult(0, 2, BatchItemResult.Status.FOUND, new Product(2, "Product 2", 5, 1))))
+                .when(productService).findAllByIds(Arrays.asList(2L));
+
+        mockMvc.perform(post("/products/lookup")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].product.quantity", is(5)));
+    }
+
+    @Test
+    @DisplayName("GET /actuator/jdbc - pool and slow statement diagnostics")
+    void testJdbcDiagnostics() throws Exception {
+        mockMvc.perform(get("/actuator/jdbc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.pool.name", is("product-pool")))
+                .andExpect(jsonPath("$.pool.maximumPoolSize", is(10)))
+                .andExpect(jsonPath("$.connectionWait.count").isNumber())
+                .andExpect(jsonPath("$.slowStatements.thresholdMillis", is(200)));
+    }
+
+    @Test
+    @DisplayName("POST /products/batch - Success")
+    void testCreateProducts() throws Exception {
+        // the service reports the generated id of every product
+        List<Product> postProducts = Arrays.asList(new Product("Product 1", 10), new Product("Product 2", 5));
+        doReturn(Arrays.asList(new BatchItemResult(0, 1, BatchItemResult.Status.CREATED),
+                new BatchItemResult(1, 2, BatchItemResult.Status.CREATED)))
+                .when(productService).saveAll(any());
+
+        mockMvc.perform(post("/products/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(asJsonString(postProducts)))
+                .andExpect(status().isOk())
+                .andExpect((ResultMatcher) jsonPath("$[1].index", is(1)))
+                .andExpect((ResultMatcher) jsonPath("$[1].id", is(2)))
+                .andExpect(jsonPath("$[1].status", is("CREATED")));
+    }
+
+    @Test
+    @DisplayName("DELETE /products/batch - Not Found")
+    void testDeleteProductsNotFound() throws Exception {
+        // product 3 does not exist
+        doReturn(Arrays.asList(new BatchItemResult(0, 1, BatchItemResult.Status.DELETED),
+                new BatchItemResult(1, 3, BatchItemResult.Status.NOT_FOUND)))
+                .when(productService).deleteAll(Arrays.asList(1L, 3L));
+
+        mockMvc.perform(delete("/products/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 3]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("DELETED")))
+                .andExpect(jsonPath("$[1].status", is("NOT_FOUND")));
+    }
+
     // test case for negative test
     @Test
     @DisplayName("GET /product/1 - Not Found")
@@ -118,14 +627,13 @@ public class ProductControllerTest {
     void testProductPutSuccess() throws Exception {
         // new product changes to be sent as the body of the http request
         Product putProduct = new Product("Product Name", 10, 2);
-        // after changes, the product that should be returned
-        Product mockProduct = new Product(1, "Product Name", 10, 1);
-
-        // return optional of mock-product when the product service find by id is used in this code base.
-        doReturn(Optional.of(mockProduct)).when(productService).findbyId((long) 1);
 
-        // method return type of update is boolean
-        doReturn(true).when(productService).update(any());
+        // the version check and update happen in one call, the service increases the version of the product
+        doAnswer(invocation -> {
+            Product product = invocation.getArgument(0);
+            product.setVersion(2);
+            return UpdateResult.UPDATED;
+        }).when(productService).updateIfVersion(any(), eq(1));
 
         mockMvc.perform(put("/product/{id}", 1)
                 .contentType(MediaType.APPLICATION_JSON)
@@ -153,12 +661,8 @@ public class ProductControllerTest {
     void testProductPutVersionMisMatch() throws Exception {
         // product to be sent in body of request
         Product putProduct = new Product("Product Name", 10);
-        // product to be received when the product service is called, product has wrong version number
-        Product mockProduct = new Product(1, "Product Name", 10, 2);
-        // return optional mock product
-        doReturn(Optional.of(mockProduct)).when(productService).findbyId((long) 1);
-        // method return type is boolean
-        doReturn(true).when(productService).update(any());
+        // the product in the database has a different version number than the ifMatch
+        doReturn(UpdateResult.CONFLICT).when(productService).updateIfVersion(any(), eq(1));
 
         mockMvc.perform(put("/product/{id}",1)
                 .contentType(MediaType.APPLICATION_JSON)
@@ -175,8 +679,8 @@ public class ProductControllerTest {
     @DisplayName("PUT /product/1 - Not Found")
     void testProductPutNotFound() throws Exception {
         Product putProduct  = new Product("Product Name", 10);
-        // return empty result, should return product not found
-        doReturn(Optional.empty()).when(productService).findbyId((long) 1);
+        // no product with the id exists, should return product not found
+        doReturn(UpdateResult.NOT_FOUND).when(productService).updateIfVersion(any(), eq(1));
 
         mockMvc.perform(put("/product/{id}", 1)
                 .contentType(MediaType.APPLICATION_JSON)
@@ -0,0 +1,82 @@
+package com.TDD.ControllerTest;
+
+import com.TDD.controller.ReactiveProductController;
+import com.TDD.model.Product;
+import com.TDD.model.UpdateResult;
+import com.TDD.repository.ReactiveProductRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+public class ReactiveProductControllerTest {
+
+    private ReactiveProductRepository productRepository;
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        // the controller is bound to a mock repository, no server is started
+        productRepository = mock(ReactiveProductRepository.class);
+        webTestClient = WebTestClient.bindToController(new ReactiveProductController(productRepository)).build();
+    }
+
+    @Test
+    @DisplayName("GET /product/1 - Found")
+    void testGetProductByIdFound() {
+        doReturn(Mono.just(new Product(1, "Product Name", 10, 1))).when(productRepository).findById(1);
+
+        webTestClient.get().uri("/product/{id}", 1)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"1\"")
+                .expectHeader().valueEquals(HttpHeaders.LOCATION, "/product/1")
+                .expectBody()
+                .jsonPath("$.name").isEqualTo("Product Name");
+    }
+
+    @Test
+    @DisplayName("GET /product/1 - Not Found")
+    void testGetProductByIdNotFound() {
+        doReturn(Mono.empty()).when(productRepository).findById(1);
+
+        webTestClient.get().uri("/product/{id}", 1)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    @DisplayName("GET /products - Streamed")
+    void testGetProductsStreamed() {
+        doReturn(Flux.just(new Product(1, "Product 1", 10, 1), new Product(2, "Product 2", 5, 1)))
+                .when(productRepository).findAll();
+
+        webTestClient.get().uri("/products")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBodyList(Product.class).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("PUT /product/1 - Version Mismatch")
+    void testProductPutVersionMisMatch() {
+        doReturn(Mono.just(UpdateResult.CONFLICT)).when(productRepository).updateIfVersion(any(), eq(1));
+
+        webTestClient.put().uri("/product/{id}", 1)
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(HttpHeaders.IF_MATCH, "1")
+                .bodyValue(new Product("Product Name", 10))
+                .exchange()
+                .expectStatus().isEqualTo(409);
+    }
+}
@@ -1,6 +1,7 @@
 package com.TDD;
 
 import com.TDD.model.Product;
+import com.TDD.model.UpdateResult;
 import com.TDD.service.ProductService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.DisplayName;
@@ -22,6 +23,8 @@ import java.util.Optional;
 
 import static org.hamcrest.Matchers.is;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -118,14 +121,13 @@ public class ProductControllerTest {
     void testProductPutSuccess() throws Exception {
         // new product changes to be sent as the body of the http request
         Product putProduct = new Product("Product Name", 10, 2);
-        // after changes, the product that should be returned
-        Product mockProduct = new Product(1, "Product Name", 10, 1);
-
-        // return optional of mock-product when the product service find by id is used in this code base.
-        doReturn(Optional.of(mockProduct)).when(productService).findbyId((long) 1);
 
-        // method return type of update is boolean
-        doReturn(true).when(productService).update(any());
+        // the version check and update happen in one call, the service increases the version of the product
+        doAnswer(invocation -> {
+            Product product = invocation.getArgument(0);
+            product.setVersion(2);
+            return UpdateResult.UPDATED;
+        }).when(productService).updateIfVersion(any(), eq(1));
 
         mockMvc.perform(put("/product/{id}", 1)
                 .contentType(MediaType.APPLICATION_JSON)
@@ -153,12 +155,8 @@ public class ProductControllerTest {
     void testProductPutVersionMisMatch() throws Exception {
         // product to be sent in body of request
         Product putProduct = new Product("Product Name", 10);
-        // product to be received when the product service is called, product has wrong version number
-        Product mockProduct = new Product(1, "Product Name", 10, 2);
-        // return optional mock product
-        doReturn(Optional.of(mockProduct)).when(productService).findbyId((long) 1);
-        // method return type is boolean
-        doReturn(true).when(productService).update(any());
+        // the product in the database has a different version number than the ifMatch
+        doReturn(UpdateResult.CONFLICT).when(productService).updateIfVersion(any(), eq(1));
 
         mockMvc.perform(put("/product/{id}",1)
                 .contentType(MediaType.APPLICATION_JSON)
@@ -175,8 +173,8 @@ public class ProductControllerTest {
     @DisplayName("PUT /product/1 - Not Found")
     void testProductPutNotFound() throws Exception {
         Product putProduct  = new Product("Product Name", 10);
-        // return empty result, should return product not found
-        doReturn(Optional.empty()).when(productService).findbyId((long) 1);
+        // no product with the id exists, should return product not found
+        doReturn(UpdateResult.NOT_FOUND).when(productService).updateIfVersion(any(), eq(1));
 
         mockMvc.perform(put("/product/{id}", 1)
                 .contentType(MediaType.APPLICATION_JSON)
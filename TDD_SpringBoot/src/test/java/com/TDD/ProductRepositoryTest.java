@@ -2,6 +2,7 @@ package com.TDD;
 
 import com.TDD.model.Product;
 import com.TDD.repository.ProductRepository;
+import com.github.database.rider.core.api.connection.ConnectionHolder;
 import com.github.database.rider.core.api.dataset.DataSet;
 import com.github.database.rider.junit5.DBUnitExtension;
 import org.junit.jupiter.api.Assertions;
@@ -9,13 +10,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.jdbc.datasource.ConnectionHolder;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import javax.sql.DataSource;
-import java.sql.Connection;
-import java.sql.SQLException;
 import java.util.List;
 
 @ExtendWith({DBUnitExtension.class, SpringExtension.class})
@@ -29,12 +27,8 @@ public class ProductRepositoryTest {
     @Autowired
     private ProductRepository productRepository;
 
-    public ConnectionHolder getConnectionHolder() throws SQLException {
-        // return a function that retrieves a connection from our data source
-       Connection con = dataSource.getConnection();
-
-       return (ConnectionHolder) con;
-    }
+    // return a function that retrieves a connection from our data source
+    public ConnectionHolder connectionHolder = () -> dataSource.getConnection();
 
     @Test
     @DataSet("products.yml")
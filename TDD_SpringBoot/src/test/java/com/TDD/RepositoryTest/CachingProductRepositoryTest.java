@@ -0,0 +1,187 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.model.Product;
+import com.TDD.model.UpdateResult;
+import com.TDD.repository.CachingProductRepository;
+import com.TDD.repository.ProductRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CachingProductRepositoryTest {
+
+    private ProductRepository productRepository;
+    private CachingProductRepository cachingProductRepository;
+
+    @BeforeEach
+    void setUp() {
+        // the cache sits in front of a mock repository so the database calls can be counted
+        productRepository = mock(ProductRepository.class);
+        cachingProductRepository = new CachingProductRepository(productRepository, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    @DisplayName("findById - second read is served from the cache")
+    void testFindByIdCached() {
+        doReturn(Optional.of(new Product(1, "Product 1", 2, 1))).when(productRepository).findById(1);
+
+        Optional<Product> first = cachingProductRepository.findById(1);
+        Optional<Product> second = cachingProductRepository.findById(1);
+
+        Assertions.assertTrue(first.isPresent(), "Product 1 is found");
+        Assertions.assertEquals("Product 1", second.get().getName(), "cached product name should match");
+        // only the first read goes to the database
+        verify(productRepository, times(1)).findById(1);
+        Assertions.assertEquals(1, cachingProductRepository.stats().hitCount(), "1 cache hit");
+        Assertions.assertEquals(1, cachingProductRepository.stats().missCount(), "1 cache miss");
+    }
+
+    @Test
+    @DisplayName("findById - changing a returned product does not change the cache")
+    void testFindByIdReturnsCopy() {
+        doReturn(Optional.of(new Product(1, "Product 1", 2, 1))).when(productRepository).findById(1);
+
+        cachingProductRepository.findById(1).get().setName("Changed");
+
+        Assertions.assertEquals("Product 1", cachingProductRepository.findById(1).get().getName(), "cache keeps its own copy");
+    }
+
+    @Test
+    @DisplayName("update - cached product is invalidated, also when the version goes down")
+    void testUpdateInvalidates() {
+        doReturn(Optional.of(new Product(1, "Product 1", 2, 5))).when(productRepository).findById(1);
+        doReturn(true).when(productRepository).update(any());
+        cachingProductRepository.findById(1);
+
+        cachingProductRepository.update(new Product(1, "This is product 1", 100, 2));
+        doReturn(Optional.of(new Product(1, "This is product 1", 100, 2))).when(productRepository).findById(1);
+
+        Product product = cachingProductRepository.findById(1).get();
+        Assertions.assertEquals("This is product 1", product.getName(), "updated name is read again");
+        Assertions.assertEquals(2, product.getVersion(), "the lower version written is served");
+        verify(productRepository, times(2)).findById(1);
+    }
+
+    @Test
+    @DisplayName("updateIfVersion - cached product is replaced with the new version")
+    void testUpdateIfVersionReplacesEntry() {
+        doReturn(Optional.of(new Product(1, "Product 1", 2, 1))).when(productRepository).findById(1);
+        doReturn(UpdateResult.UPDATED).when(productRepository).updateIfVersion(any(), eq(1));
+        cachingProductRepository.findById(1);
+
+        cachingProductRepository.updateIfVersion(new Product(1, "This is product 1", 100, 2), 1);
+
+        Product product = cachingProductRepository.findById(1).get();
+        Assertions.assertEquals("This is product 1", product.getName(), "updated name is cached");
+        Assertions.assertEquals(2, product.getVersion(), "updated version is cached");
+        verify(productRepository, times(1)).findById(1);
+    }
+
+    @Test
+    @DisplayName("updateAll - updated products are invalidated, also when the version goes down")
+    void testUpdateAllInvalidates() {
+        doReturn(Optional.of(new Product(1, "Product 1", 2, 5))).when(productRepository).findById(1);
+        doReturn(new int[] {1}).when(productRepository).updateAll(any());
+        cachingProductRepository.findById(1);
+
+        cachingProductRepository.updateAll(Arrays.asList(new Product(1, "This is product 1", 100, 2)));
+
+        Assertions.assertEquals(0, cachingProductRepository.size(), "the batch does not leave the old product cached");
+    }
+
+    @Test
+    @DisplayName("findAllByIds - cached products are not read again, the rest in one call")
+    void testFindAllByIdsCached() {
+        doReturn(Optional.of(new Product(1, "Product 1", 2, 1))).when(productRepository).findById(1);
+        doReturn(Arrays.asList(new Product(2, "Product 2", 3, 1))).when(productRepository).findAllByIds(Arrays.asList(2L, 3L));
+        cachingProductRepository.findById(1);
+
+        List<Product> products = cachingProductRepository.findAllByIds(Arrays.asList(1L, 2L, 3L));
+
+        Assertions.assertEquals(2, products.size(), "products 1 and 2 are found");
+        // only the misses go to the database, and what was loaded is cached
+        verify(productRepository).findAllByIds(Arrays.asList(2L, 3L));
+        Assertions.assertEquals(2, cachingProductRepository.size(), "products 1 and 2 are cached");
+        Assertions.assertEquals("Product 2", cachingProductRepository.findById(2).get().getName());
+        verify(productRepository, never()).findById(2);
+    }
+
+    @Test
+    @DisplayName("findAllByIds - a product deleted during the load is not cached")
+    void testFindAllByIdsInvalidatedDuringLoad() {
+        doAnswer(invocation -> {
+            // the product is deleted after the rows were read, before they are cached
+            cachingProductRepository.delete(2L);
+            return Arrays.asList(new Product(2, "Product 2", 3, 1));
+        }).when(productRepository).findAllByIds(any());
+        doReturn(Optional.empty()).when(productRepository).findById(2);
+
+        cachingProductRepository.findAllByIds(Arrays.asList(2L));
+
+        Assertions.assertEquals(0, cachingProductRepository.size(), "the deleted product is not cached");
+        Assertions.assertFalse(cachingProductRepository.findById(2).isPresent(), "product 2 is gone");
+    }
+
+    @Test
+    @DisplayName("findVersion - cached product answers without the database")
+    void testFindVersionCached() {
+        doReturn(Optional.of(new Product(1, "Product 1", 2, 1))).when(productRepository).findById(1);
+        doReturn(Optional.of(3)).when(productRepository).findVersion(2);
+        cachingProductRepository.findById(1);
+
+        Assertions.assertEquals(Optional.of(1), cachingProductRepository.findVersion(1), "version of the cached product");
+        Assertions.assertEquals(Optional.of(3), cachingProductRepository.findVersion(2), "version read from the database");
+        verify(productRepository, never()).findVersion(1);
+        // reading only the version does not load the product into the cache
+        Assertions.assertEquals(1, cachingProductRepository.size(), "only product 1 is cached");
+    }
+
+    @Test
+    @DisplayName("adjustQuantity - cached product takes the returned row")
+    void testAdjustQuantityReplacesEntry() {
+        doReturn(Optional.of(new Product(1, "Product 1", 2, 1))).when(productRepository).findById(1);
+        doReturn(Optional.of(new Product(1, "Product 1", 5, 2))).when(productRepository).adjustQuantity(1, 3);
+        cachingProductRepository.findById(1);
+
+        cachingProductRepository.adjustQuantity(1, 3);
+
+        Product product = cachingProductRepository.findById(1).get();
+        Assertions.assertEquals(5, product.getQuantity(), "new quantity is cached");
+        Assertions.assertEquals(2, product.getVersion(), "new version is cached");
+        verify(productRepository, times(1)).findById(1);
+    }
+
+    @Test
+    @DisplayName("saveAll - new products are not cached")
+    void testSaveAllNotCached() {
+        List<Product> products = Arrays.asList(new Product(1, "Product 1", 2, 0), new Product(2, "Product 2", 3, 0));
+        doReturn(products).when(productRepository).saveAll(products);
+
+        cachingProductRepository.saveAll(products);
+
+        Assertions.assertEquals(0, cachingProductRepository.size(), "the cache keeps the products being read");
+    }
+
+    @Test
+    @DisplayName("delete - cached product is invalidated")
+    void testDeleteInvalidates() {
+        doReturn(Optional.of(new Product(1, "Product 1", 2, 1))).when(productRepository).findById(1);
+        doReturn(true).when(productRepository).delete(1L);
+        cachingProductRepository.findById(1);
+
+        cachingProductRepository.delete(1L);
+        doReturn(Optional.empty()).when(productRepository).findById(1);
+
+        Assertions.assertFalse(cachingProductRepository.findById(1).isPresent(), "deleted product is not served from the cache");
+    }
+}
@@ -0,0 +1,93 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.model.Product;
+import com.TDD.model.UpdateResult;
+import com.TDD.repository.OffHeapProductRepository;
+import com.TDD.repository.ProductRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import static org.mockito.Mockito.*;
+
+public class OffHeapProductRepositoryTest {
+
+    private ProductRepository productRepository;
+    private OffHeapProductRepository offHeapProductRepository;
+
+    @BeforeEach
+    void setUp() {
+        // the store is loaded from a mock repository holding products 1 and 2
+        productRepository = mock(ProductRepository.class);
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            consumer.accept(new Product(1, "Product 1", 2, 1));
+            consumer.accept(new Product(2, "Product 2", 3, 1));
+            return null;
+        }).when(productRepository).streamAll(any());
+        offHeapProductRepository = new OffHeapProductRepository(productRepository, 16);
+        offHeapProductRepository.afterSingletonsInstantiated();
+    }
+
+    @Test
+    @DisplayName("findById - loaded products are read without the database")
+    void testFindByIdFromStore() {
+        Optional<Product> product = offHeapProductRepository.findById(1);
+
+        Assertions.assertEquals("Product 1", product.get().getName(), "product 1 is loaded");
+        Assertions.assertFalse(offHeapProductRepository.findById(3).isPresent(), "product 3 does not exist");
+        Assertions.assertEquals(Optional.of(1), offHeapProductRepository.findVersion(2), "version of product 2");
+        Assertions.assertEquals(2, offHeapProductRepository.count(), "two products are loaded");
+        Assertions.assertEquals(2, offHeapProductRepository.findAllByIds(Arrays.asList(1L, 2L, 3L)).size(), "products 1 and 2 are found");
+        verify(productRepository, never()).findById(anyLong());
+        verify(productRepository, never()).findAllByIds(any());
+    }
+
+    @Test
+    @DisplayName("update - written to the database, then to the store")
+    void testUpdateWritesThrough() {
+        doReturn(true).when(productRepository).update(any());
+        doReturn(UpdateResult.NOT_FOUND).when(productRepository).updateIfVersion(any(), eq(1));
+
+        offHeapProductRepository.update(new Product(1, "This is product 1", 100, 2));
+        offHeapProductRepository.updateIfVersion(new Product(2, "Product 2", 5, 2), 1);
+
+        Assertions.assertEquals("This is product 1", offHeapProductRepository.findById(1).get().getName(), "new name is stored");
+        Assertions.assertFalse(offHeapProductRepository.findById(2).isPresent(), "product 2 was deleted in the database");
+        verify(productRepository, times(1)).update(any());
+    }
+
+    @Test
+    @DisplayName("save and delete - the store follows the database")
+    void testSaveDelete() {
+        doReturn(new Product(3, "Product 3", 4, 1)).when(productRepository).save(any());
+        doReturn(true).when(productRepository).delete(1L);
+
+        offHeapProductRepository.save(new Product("Product 3", 4, 1));
+        offHeapProductRepository.delete(1L);
+
+        Assertions.assertEquals("Product 3", offHeapProductRepository.findById(3).get().getName(), "saved product is stored");
+        Assertions.assertFalse(offHeapProductRepository.findById(1).isPresent(), "deleted product is removed");
+    }
+
+    @Test
+    @DisplayName("adjustQuantityAll - changed products are read back from the database")
+    void testAdjustQuantityAll() {
+        Map<Long, Long> deltas = new TreeMap<>(Map.of(1L, 5L, 2L, -10L));
+        doReturn(new int[]{1, 0}).when(productRepository).adjustQuantityAll(deltas);
+        doReturn(List.of(new Product(1, "Product 1", 7, 2))).when(productRepository).findAllByIds(List.of(1L));
+
+        offHeapProductRepository.adjustQuantityAll(deltas);
+
+        Assertions.assertEquals(7, offHeapProductRepository.findById(1).get().getQuantity(), "new quantity of product 1");
+        Assertions.assertEquals(3, offHeapProductRepository.findById(2).get().getQuantity(), "product 2 was not changed");
+    }
+}
@@ -0,0 +1,86 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.model.Product;
+import com.TDD.repository.OffHeapProductStore;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+public class OffHeapProductStoreTest {
+
+    private OffHeapProductStore store;
+
+    @BeforeEach
+    void setUp() {
+        // small, so the tests make it grow
+        store = new OffHeapProductStore(4);
+    }
+
+    @Test
+    @DisplayName("put - product is read back and replaced by a new version")
+    void testPutGet() {
+        store.put(new Product(1, "Product 1", 2, 1));
+        store.put(new Product(1, "This is product 1", 100, 2));
+
+        Product product = store.get(1);
+        Assertions.assertEquals("This is product 1", product.getName(), "new name is stored");
+        Assertions.assertEquals(100, product.getQuantity(), "new quantity is stored");
+        Assertions.assertEquals(2, store.version(1), "new version is stored");
+        Assertions.assertEquals(1, store.size(), "one product");
+        Assertions.assertNull(store.get(2), "product 2 was never stored");
+        Assertions.assertEquals(-1, store.version(2), "product 2 has no version");
+    }
+
+    @Test
+    @DisplayName("put - grows past the expected number of products")
+    void testGrow() {
+        for (int i = 1; i <= 10_000; i++) {
+            store.put(new Product(i, "Product " + i, i % 1000, 1));
+        }
+
+        Assertions.assertEquals(10_000, store.size(), "all products are stored");
+        for (int i = 1; i <= 10_000; i++) {
+            Assertions.assertEquals("Product " + i, store.get(i).getName(), "product " + i + " is found");
+        }
+    }
+
+    @Test
+    @DisplayName("remove - the other products are still found")
+    void testRemove() {
+        for (int i = 1; i <= 1000; i++) {
+            store.put(new Product(i * 7919L, "Product " + i, i, 1));
+        }
+
+        for (int i = 1; i <= 1000; i += 2) {
+            Assertions.assertTrue(store.remove(i * 7919L), "product " + i + " is removed");
+        }
+
+        Assertions.assertFalse(store.remove(7919L), "product 1 is already gone");
+        Assertions.assertEquals(500, store.size(), "half the products are left");
+        for (int i = 1; i <= 1000; i++) {
+            Assertions.assertEquals(i % 2 == 0, store.get(i * 7919L) != null, "product " + i + " is found only if kept");
+        }
+    }
+
+    @Test
+    @DisplayName("put - equal names are stored once, a null name stays null")
+    void testNames() {
+        store.put(new Product(1, "Same", 1, 1));
+        store.put(new Product(2, "Same", 2, 1));
+        store.put(new Product(3, null, 3, 1));
+        store.put(new Product(4, "Ünïcödé ✓", 4, 1));
+
+        Assertions.assertEquals(2, store.nameCount(), "two different names");
+        Assertions.assertEquals("Same", store.get(2).getName(), "shared name is read back");
+        Assertions.assertNull(store.get(3).getName(), "null name is read back");
+        Assertions.assertEquals("Ünïcödé ✓", store.get(4).getName(), "utf-8 name is read back");
+        Assertions.assertTrue(store.offHeapBytes() > 0, "memory is allocated outside the heap");
+    }
+
+    @Test
+    @DisplayName("put - a product without an id is rejected")
+    void testPutWithoutId() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> store.put(new Product(0, "Product", 1, 1)));
+    }
+}
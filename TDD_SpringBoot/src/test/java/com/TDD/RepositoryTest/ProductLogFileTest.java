@@ -0,0 +1,141 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.model.Product;
+import com.TDD.repository.ProductLogFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+public class ProductLogFileTest {
+
+    @TempDir
+    Path directory;
+
+    // the records handed over by open, as "put <id> <name> <quantity> <version>" and "delete <id>"
+    private final List<String> replayed = new ArrayList<>();
+
+    private final ProductLogFile.Replay replay = new ProductLogFile.Replay() {
+        @Override
+        public void put(Product product) {
+            replayed.add("put " + product.getId() + " " + product.getName() + " " + product.getQuantity() + " " + product.getVersion());
+        }
+
+        @Override
+        public void delete(long id) {
+            replayed.add("delete " + id);
+        }
+    };
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().toList();
+        }
+    }
+
+    @Test
+    @DisplayName("open - the records appended before are read back in order")
+    void testReplay() throws IOException {
+        ProductLogFile logFile = new ProductLogFile(directory, 1 << 20);
+        logFile.open(0, replay);
+        logFile.put(new Product(1, "Product 1", 2, 1));
+        logFile.put(new Product(2, null, 3, 1));
+        logFile.delete(1);
+        logFile.close();
+
+        ProductLogFile reopened = new ProductLogFile(directory, 1 << 20);
+        long records = reopened.open(0, replay);
+
+        Assertions.assertEquals(3, records, "three records");
+        Assertions.assertEquals(List.of("put 1 Product 1 2 1", "put 2 null 3 1", "delete 1"), replayed);
+        Assertions.assertEquals(logFile.position(), reopened.position(), "appending goes on after the last record");
+    }
+
+    @Test
+    @DisplayName("open - records before the position are skipped")
+    void testReplayFromPosition() throws IOException {
+        ProductLogFile logFile = new ProductLogFile(directory, 1 << 20);
+        logFile.open(0, replay);
+        long position = logFile.put(new Product(1, "Product 1", 2, 1));
+        logFile.put(new Product(1, "Product 1", 5, 2));
+        logFile.close();
+
+        new ProductLogFile(directory, 1 << 20).open(position, replay);
+
+        Assertions.assertEquals(List.of("put 1 Product 1 5 2"), replayed);
+    }
+
+    @Test
+    @DisplayName("open - a record cut short at the end is dropped and appending goes on before it")
+    void testTornTail() throws IOException {
+        ProductLogFile logFile = new ProductLogFile(directory, 1 << 20);
+        logFile.open(0, replay);
+        long position = logFile.put(new Product(1, "Product 1", 2, 1));
+        logFile.put(new Product(2, "Product 2", 3, 1));
+        logFile.close();
+        Path segment = segments().get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(segment) - 3);
+        }
+
+        ProductLogFile reopened = new ProductLogFile(directory, 1 << 20);
+        Assertions.assertEquals(1, reopened.open(0, replay), "only the whole record is read");
+        Assertions.assertEquals(position, reopened.position(), "the cut record is gone");
+        reopened.put(new Product(3, "Product 3", 4, 1));
+        reopened.close();
+
+        replayed.clear();
+        new ProductLogFile(directory, 1 << 20).open(0, replay);
+        Assertions.assertEquals(List.of("put 1 Product 1 2 1", "put 3 Product 3 4 1"), replayed);
+    }
+
+    @Test
+    @DisplayName("append - full segments are rotated, deleteBefore removes the old ones")
+    void testRotation() throws IOException {
+        // room for about two records per segment
+        ProductLogFile logFile = new ProductLogFile(directory, 80);
+        logFile.open(0, replay);
+        long position = 0;
+        for (int i = 1; i <= 10; i++) {
+            position = logFile.put(new Product(i, "Product " + i, i, 1));
+            if (i == 6) {
+                logFile.deleteBefore(position);
+            }
+        }
+        logFile.close();
+
+        Assertions.assertTrue(segments().size() < 5, "the segments before record 6 are deleted");
+        new ProductLogFile(directory, 80).open(0, replay);
+        Assertions.assertEquals("put 10 Product 10 10 1", replayed.get(replayed.size() - 1), "the newest record is kept");
+        Assertions.assertFalse(replayed.contains("put 1 Product 1 1 1"), "the oldest record is deleted");
+        Path last = segments().get(segments().size() - 1);
+        Assertions.assertEquals(position, Long.parseLong(last.getFileName().toString().replace(".log", "")) + Files.size(last),
+                "segments are named after their position");
+    }
+
+    @Test
+    @DisplayName("open - damage before the last segment fails")
+    void testDamagedSegment() throws IOException {
+        ProductLogFile logFile = new ProductLogFile(directory, 80);
+        logFile.open(0, replay);
+        for (int i = 1; i <= 6; i++) {
+            logFile.put(new Product(i, "Product " + i, i, 1));
+        }
+        logFile.close();
+        try (FileChannel channel = FileChannel.open(segments().get(0), StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), 12);
+        }
+
+        Assertions.assertThrows(IOException.class, () -> new ProductLogFile(directory, 80).open(0, replay));
+    }
+}
@@ -1,21 +1,35 @@
 package com.TDD.RepositoryTest;
 
 import com.TDD.model.Product;
+import com.TDD.model.ProductQuery;
+import com.TDD.model.UpdateResult;
 import com.TDD.repository.ProductRepository;
+import com.TDD.service.ProductWriteBehind;
 import com.github.database.rider.core.api.connection.ConnectionHolder;
 import com.github.database.rider.core.api.dataset.DataSet;
 import com.github.database.rider.junit5.DBUnitExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
 import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -30,6 +44,9 @@ public class ProductRepositoryTest {
     @Autowired
     private ProductRepository productRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     public ConnectionHolder connectionHolder = () -> dataSource.getConnection();
 
 
@@ -43,6 +60,98 @@ public class ProductRepositoryTest {
         Assertions.assertEquals(2, products.size(), "2 products in database ");
     }
 
+    @Test
+    @DataSet("products.yml")
+    void testFindVersion() {
+        // only the version is read, a missing product has no version
+        Assertions.assertEquals(Optional.of(2), productRepository.findVersion(2), "version should be 2");
+        Assertions.assertFalse(productRepository.findVersion(3).isPresent(), "product 3 does not exist");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testFindAllByIds() {
+        // the products that exist, each once, a missing id is left out
+        List<Product> products = new ArrayList<>(productRepository.findAllByIds(Arrays.asList(2L, 3L, 1L, 2L)));
+        products.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        Assertions.assertEquals(2, products.size(), "products 1 and 2 are found");
+        Assertions.assertEquals("Product 1", products.get(0).getName());
+        Assertions.assertEquals(2, products.get(1).getVersion());
+
+        // more ids than fit in one IN list
+        List<Long> ids = new ArrayList<>();
+        for (long id = 3; id < 1200; id++) {
+            ids.add(id);
+        }
+        ids.add(1L);
+        Assertions.assertEquals(1, productRepository.findAllByIds(ids).size(), "only product 1 exists");
+        Assertions.assertTrue(productRepository.findAllByIds(new ArrayList<>()).isEmpty(), "no ids, no products");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testFindAllWithQuery() {
+        // quantity range and descending sort are done by the database
+        ProductQuery query = new ProductQuery();
+        query.setNamePrefix("Product");
+        query.setMinQuantity(2);
+        query.setMaxQuantity(3);
+        query.setSort("quantity");
+        query.setDescending(true);
+        List<Product> products = productRepository.findAll(query);
+        Assertions.assertEquals(2, products.size(), "2 products match");
+        Assertions.assertEquals(2, products.get(0).getId(), "product 2 has the highest quantity");
+
+        // a like wildcard in the value is matched literally
+        ProductQuery contains = new ProductQuery();
+        contains.setNameContains("t 1");
+        Assertions.assertEquals(1, productRepository.findAll(contains).size(), "only product 1 contains 't 1'");
+        contains.setNameContains("%");
+        Assertions.assertEquals(0, productRepository.findAll(contains).size(), "no name contains '%'");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testFindAllWithFields() {
+        ProductQuery query = new ProductQuery();
+        query.setMaxQuantity(2);
+        List<Map<String, Object>> rows = productRepository.findAll(query, Arrays.asList("name"));
+        Assertions.assertEquals(1, rows.size(), "1 product has quantity 2 or less");
+        // the id is always selected, other columns only when asked for
+        Assertions.assertEquals(Arrays.asList("id", "name"), new ArrayList<>(rows.get(0).keySet()), "id and name selected");
+        Assertions.assertEquals("Product 1", rows.get(0).get("name"), "name should be Product 1");
+
+        // field names are written into the sql, so unknown ones are refused. the repository proxy
+        // translates the IllegalArgumentException
+        Assertions.assertThrows(InvalidDataAccessApiUsageException.class,
+                () -> productRepository.findAll(query, Arrays.asList("name; DROP TABLE Product")));
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testFindAfter() {
+        // only the products after the cursor are returned, ordered by id
+        List<Product> products = productRepository.findAfter(1, 10);
+        Assertions.assertEquals(1, products.size(), "1 product after id 1");
+        Assertions.assertEquals(2, products.get(0).getId(), "id should be 2");
+
+        // the limit caps the page size
+        List<Product> firstPage = productRepository.findAfter(0, 1);
+        Assertions.assertEquals(1, firstPage.size(), "page holds 1 product");
+        Assertions.assertEquals(1, firstPage.get(0).getId(), "id should be 1");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testStreamAll() {
+        // every product is passed to the consumer in id order
+        List<Product> products = new ArrayList<>();
+        productRepository.streamAll(products::add);
+        Assertions.assertEquals(2, products.size(), "2 products streamed");
+        Assertions.assertEquals(1, products.get(0).getId(), "first id should be 1");
+        Assertions.assertEquals("Product 2", products.get(1).getName(), "second product should be product 2");
+    }
+
     @Test
     @DataSet("products.yml")
     void testFindByIdSuccess() {
@@ -123,6 +232,92 @@ public class ProductRepositoryTest {
         Assertions.assertFalse(result, "No such product exists in database");
     }
 
+    @Test
+    @DataSet("products.yml")
+    void testAdjustQuantity() {
+        // the updated row is returned with the new quantity and version
+        Optional<Product> updated = productRepository.adjustQuantity(2, -3);
+        Assertions.assertTrue(updated.isPresent(), "product 2 is updated");
+        Assertions.assertEquals(0, updated.get().getQuantity(), "quantity should be 0");
+        Assertions.assertEquals(3, updated.get().getVersion(), "version should be 3");
+
+        // the quantity cannot go below zero, and a missing product is not updated
+        Assertions.assertFalse(productRepository.adjustQuantity(2, -1).isPresent(), "no stock left");
+        Assertions.assertFalse(productRepository.adjustQuantity(3, 1).isPresent(), "product 3 does not exist");
+        Assertions.assertEquals(3, productRepository.findById(2).get().getVersion(), "failed change keeps the version");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testAdjustQuantityAll() {
+        // product 1 takes the change, product 2 would go below zero and product 3 does not exist
+        Map<Long, Long> deltas = new TreeMap<>(Map.of(1L, 10L, 2L, -4L, 3L, 1L));
+        int[] counts = productRepository.adjustQuantityAll(deltas);
+
+        Assertions.assertArrayEquals(new int[] {1, 0, 0}, counts, "only product 1 is updated");
+        Assertions.assertEquals(12, productRepository.findById(1).get().getQuantity(), "quantity should be 12");
+        Assertions.assertEquals(3, productRepository.findById(2).get().getQuantity(), "quantity should stay 3");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testAdjustQuantityAllFailsAsAWhole() {
+        // product 2 breaks the check after product 1 was sent in the same batch. the failed flush keeps both
+        // changes, and the next flush applies each of them once
+        jdbcTemplate.execute("ALTER TABLE Product ADD CONSTRAINT quantity_below_100 CHECK (quantity < 100)");
+        ProductWriteBehind writeBehind = new ProductWriteBehind(productRepository, new SimpleMeterRegistry(),
+                Duration.ofHours(1), 1000, false);
+        try {
+            writeBehind.add(1, 10);
+            writeBehind.add(2, 200);
+            writeBehind.flush();
+            Assertions.assertEquals(2, productRepository.findById(1).get().getQuantity(), "product 1 was rolled back");
+            Assertions.assertEquals(2, writeBehind.pendingProducts(), "both changes are kept");
+
+            jdbcTemplate.execute("ALTER TABLE Product DROP CONSTRAINT quantity_below_100");
+            writeBehind.flush();
+        } finally {
+            jdbcTemplate.execute("ALTER TABLE Product DROP CONSTRAINT IF EXISTS quantity_below_100");
+            writeBehind.shutdown();
+        }
+
+        Assertions.assertEquals(12, productRepository.findById(1).get().getQuantity(), "quantity should be 12, not 22");
+        Assertions.assertEquals(203, productRepository.findById(2).get().getQuantity(), "quantity should be 203");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testAdjustQuantityConcurrent() throws Exception {
+        // 200 writers on one product: every increment is applied once, and of the decrements only as many
+        // succeed as there is stock
+        ExecutorService executor = Executors.newFixedThreadPool(200);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                int delta = i % 2 == 0 ? 1 : -2;
+                results.add(executor.submit(() -> productRepository.adjustQuantity(1, delta).isPresent()));
+            }
+            int increments = 0;
+            int decrements = 0;
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).get()) {
+                    if (i % 2 == 0) {
+                        increments++;
+                    } else {
+                        decrements++;
+                    }
+                }
+            }
+            Product product = productRepository.findById(1).get();
+            Assertions.assertEquals(500, increments, "every increment is applied");
+            Assertions.assertEquals(2 + increments - 2 * decrements, product.getQuantity(), "no change is lost");
+            Assertions.assertTrue(product.getQuantity() >= 0, "quantity never goes below zero");
+            Assertions.assertEquals(1 + increments + decrements, product.getVersion(), "version counts the changes");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     @DataSet("products.yml")
     void testDeleteSuccess() {
@@ -135,6 +330,88 @@ public class ProductRepositoryTest {
 
     }
 
+    @Test
+    @DataSet("products.yml")
+    void testUpdateIfVersion() {
+        // product 2 has version 2, so the update succeeds and the version is increased
+        Product product = new Product(2, "This is product 2", 50, 0);
+        UpdateResult result = productRepository.updateIfVersion(product, 2);
+
+        Assertions.assertEquals(UpdateResult.UPDATED, result, "product should be updated");
+        Assertions.assertEquals(3, product.getVersion(), "version should be increased");
+        Product loadedProduct = productRepository.findById(2).get();
+        Assertions.assertEquals("This is product 2", loadedProduct.getName(), "Product name should match");
+        Assertions.assertEquals(3, loadedProduct.getVersion(), "Product version should match");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testUpdateIfVersionConflictAndNotFound() {
+        // product 1 has version 1, so an update expecting version 5 is a conflict
+        UpdateResult conflict = productRepository.updateIfVersion(new Product(1, "This is product 1", 50, 0), 5);
+        Assertions.assertEquals(UpdateResult.CONFLICT, conflict, "version should not match");
+        Assertions.assertEquals("Product 1", productRepository.findById(1).get().getName(), "Product should not change");
+
+        // product 3 does not exist
+        UpdateResult notFound = productRepository.updateIfVersion(new Product(3, "This is product 3", 50, 0), 1);
+        Assertions.assertEquals(UpdateResult.NOT_FOUND, notFound, "No such product exists in database");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testSaveAll() {
+        // save two products in one batch
+        List<Product> products = Arrays.asList(new Product("Product 5", 5, 1), new Product("Product 6", 6, 1));
+        List<Product> savedProducts = productRepository.saveAll(products);
+
+        // every product gets its own generated id
+        Assertions.assertNotEquals(savedProducts.get(0).getId(), savedProducts.get(1).getId(), "ids should be different");
+        Optional<Product> loadedProduct = productRepository.findById(savedProducts.get(1).getId());
+        Assertions.assertTrue(loadedProduct.isPresent(), "Could not load product from database");
+        Assertions.assertEquals("Product 6", loadedProduct.get().getName(), "Load the product name");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testSaveAllManyRows() {
+        // more than a batch chunk, and not a whole number of multi-row inserts
+        List<Product> products = new ArrayList<>();
+        for (int i = 0; i < 1234; i++) {
+            products.add(new Product("Product " + i, i, 1));
+        }
+        List<Product> savedProducts = productRepository.saveAll(products);
+
+        // the ids are given in list order
+        for (int i = 1; i < savedProducts.size(); i++) {
+            Assertions.assertTrue(savedProducts.get(i).getId() > savedProducts.get(i - 1).getId(), "ids should increase");
+        }
+        for (int i : new int[] {0, 49, 50, 999, 1000, 1199, 1200, 1233}) {
+            Assertions.assertEquals("Product " + i, productRepository.findById(savedProducts.get(i).getId()).get().getName(),
+                    "product " + i + " should have its own row");
+        }
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testUpdateAll() {
+        // product 1 exists, product 3 does not
+        List<Product> products = Arrays.asList(new Product(1, "This is product 1", 100, 5), new Product(3, "This is product 3", 100, 5));
+        int[] counts = productRepository.updateAll(products);
+
+        Assertions.assertArrayEquals(new int[] {1, 0}, counts, "only product 1 is updated");
+        Assertions.assertEquals(100, productRepository.findById(1).get().getQuantity(), "Product quantity should match");
+    }
+
+    @Test
+    @DataSet("products.yml")
+    void testDeleteAll() {
+        // product 2 exists, product 3 does not
+        int[] counts = productRepository.deleteAll(Arrays.asList(2L, 3L));
+
+        Assertions.assertArrayEquals(new int[] {1, 0}, counts, "only product 2 is deleted");
+        Assertions.assertFalse(productRepository.findById(2).isPresent(), "No such product exists");
+    }
+
     @Test
     @DataSet("products.yml")
     void testDeleteFailure() {
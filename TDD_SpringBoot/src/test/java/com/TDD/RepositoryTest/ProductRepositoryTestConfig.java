@@ -19,7 +19,8 @@ public class ProductRepositoryTestConfig {
         //set-up datasource for tests - connection to h2 database for test
         DriverManagerDataSource dataSource = new DriverManagerDataSource();
         dataSource.setDriverClassName("org.h2.Driver");
-        dataSource.setUrl("jdbc:h2:mem:db;DB_CLOSE_DELAY=-1");
+        // legacy mode moves the identity column past the ids the datasets insert explicitly
+        dataSource.setUrl("jdbc:h2:mem:db;DB_CLOSE_DELAY=-1;MODE=LEGACY");
         dataSource.setUsername("sa");
         dataSource.setPassword("");
         return dataSource;
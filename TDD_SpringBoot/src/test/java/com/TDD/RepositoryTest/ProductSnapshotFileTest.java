@@ -0,0 +1,107 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.model.Product;
+import com.TDD.repository.ProductSnapshotFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ProductSnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    private static List<Product> products(int count) {
+        List<Product> products = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            products.add(new Product(i * 3L, i % 10 == 0 ? null : "Product ✓ " + i, i, i % 5));
+        }
+        return products;
+    }
+
+    @Test
+    @DisplayName("write and read - products come back in order, across many small windows")
+    void testRoundTrip() throws IOException {
+        // 64 byte windows, so most records need a window of their own
+        ProductSnapshotFile snapshotFile = new ProductSnapshotFile(directory.resolve("products.snapshot"), 64);
+        List<Product> products = products(1000);
+
+        long written = snapshotFile.write(consumer -> products.forEach(consumer));
+        List<Product> read = new ArrayList<>();
+        ProductSnapshotFile.Header header = snapshotFile.read(read::add);
+
+        Assertions.assertEquals(1000, written, "1000 products written");
+        Assertions.assertEquals(1000, header.getCount(), "count in the header");
+        Assertions.assertEquals(ProductSnapshotFile.FORMAT_VERSION, header.getFormatVersion());
+        Assertions.assertEquals(1000, read.size(), "1000 products read");
+        for (int i = 0; i < products.size(); i++) {
+            Assertions.assertEquals(products.get(i).getId(), read.get(i).getId(), "id of product " + i);
+            Assertions.assertEquals(products.get(i).getName(), read.get(i).getName(), "name of product " + i);
+            Assertions.assertEquals(products.get(i).getQuantity(), read.get(i).getQuantity(), "quantity of product " + i);
+            Assertions.assertEquals(products.get(i).getVersion(), read.get(i).getVersion(), "version of product " + i);
+        }
+    }
+
+    @Test
+    @DisplayName("write - the log position is kept in the header")
+    void testLogPosition() throws IOException {
+        ProductSnapshotFile snapshotFile = new ProductSnapshotFile(directory.resolve("products.snapshot"));
+
+        snapshotFile.write(12345, consumer -> products(3).forEach(consumer));
+
+        Assertions.assertEquals(12345, snapshotFile.read(product -> { }).getLogPosition(), "log position");
+    }
+
+    @Test
+    @DisplayName("write - a new snapshot replaces the old one, an empty one is valid")
+    void testReplace() throws IOException {
+        ProductSnapshotFile snapshotFile = new ProductSnapshotFile(directory.resolve("products.snapshot"));
+        snapshotFile.write(consumer -> products(10).forEach(consumer));
+
+        snapshotFile.write(consumer -> { });
+
+        List<Product> read = new ArrayList<>();
+        Assertions.assertEquals(0, snapshotFile.read(read::add).getCount(), "empty snapshot");
+        Assertions.assertTrue(read.isEmpty(), "no products");
+        Assertions.assertFalse(Files.exists(directory.resolve("products.snapshot.tmp")), "temporary file is gone");
+    }
+
+    @Test
+    @DisplayName("read - a damaged snapshot is refused before any product is handed over")
+    void testDamaged() throws IOException {
+        Path path = directory.resolve("products.snapshot");
+        ProductSnapshotFile snapshotFile = new ProductSnapshotFile(path);
+        snapshotFile.write(consumer -> products(100).forEach(consumer));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), 500);
+        }
+
+        List<Product> read = new ArrayList<>();
+        Assertions.assertThrows(IOException.class, () -> snapshotFile.read(read::add));
+        Assertions.assertTrue(read.isEmpty(), "nothing was read");
+    }
+
+    @Test
+    @DisplayName("read - a file of another format version is refused")
+    void testOtherFormatVersion() throws IOException {
+        Path path = directory.resolve("products.snapshot");
+        ProductSnapshotFile snapshotFile = new ProductSnapshotFile(path);
+        snapshotFile.write(consumer -> products(1).forEach(consumer));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, ProductSnapshotFile.FORMAT_VERSION + 1), 4);
+        }
+
+        IOException e = Assertions.assertThrows(IOException.class, () -> snapshotFile.read(product -> { }));
+        Assertions.assertTrue(e.getMessage().contains("format version"), e.getMessage());
+    }
+}
@@ -0,0 +1,104 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.model.Product;
+import com.TDD.repository.ProductRepository;
+import com.TDD.repository.ProductSnapshotFile;
+import com.TDD.repository.ProductSnapshots;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.Mockito.*;
+
+public class ProductSnapshotsTest {
+
+    @TempDir
+    Path directory;
+
+    private JdbcTemplate jdbcTemplate;
+    private ProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() {
+        // an empty table, the way hibernate creates it
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:snapshots;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE Product (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                + " name VARCHAR(255), quantity INT NOT NULL, version INT NOT NULL)");
+        productRepository = mock(ProductRepository.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP TABLE Product");
+    }
+
+    @Test
+    @DisplayName("start - the empty table is filled from the snapshot and new ids continue after it")
+    void testRestore() throws IOException {
+        Path path = directory.resolve("products.snapshot");
+        new ProductSnapshotFile(path).write(consumer -> {
+            for (int i = 1; i <= 2537; i++) {
+                consumer.accept(new Product(i * 2L, "Product " + i, i, 3));
+            }
+        });
+
+        new ProductSnapshots(jdbcTemplate, productRepository, path, Duration.ZERO).start();
+
+        Assertions.assertEquals(2537, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Product", Long.class), "all products are loaded");
+        Assertions.assertEquals("Product 7", jdbcTemplate.queryForObject("SELECT name FROM Product WHERE id = 14", String.class));
+        jdbcTemplate.update("INSERT INTO Product (name, quantity, version) VALUES ('New', 1, 1)");
+        Assertions.assertEquals(5075, jdbcTemplate.queryForObject("SELECT id FROM Product WHERE name = 'New'", Long.class),
+                "new product gets the next id");
+    }
+
+    @Test
+    @DisplayName("start - a damaged snapshot is moved aside and the table stays empty")
+    void testRestoreDamaged() throws IOException {
+        Path path = directory.resolve("products.snapshot");
+        Files.write(path, new byte[100]);
+
+        new ProductSnapshots(jdbcTemplate, productRepository, path, Duration.ZERO).start();
+
+        Assertions.assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Product", Long.class), "nothing is loaded");
+        Assertions.assertFalse(Files.exists(path), "damaged snapshot is moved aside");
+        try (var files = Files.list(directory)) {
+            Assertions.assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("products.snapshot.damaged-")).count());
+        }
+    }
+
+    @Test
+    @DisplayName("shutdown - the products of the repository are written to the snapshot")
+    void testWriteOnShutdown() throws IOException {
+        Path path = directory.resolve("products.snapshot");
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            consumer.accept(new Product(1, "Product 1", 2, 1));
+            consumer.accept(new Product(2, "Product 2", 3, 1));
+            return null;
+        }).when(productRepository).streamAll(any());
+        ProductSnapshots snapshots = new ProductSnapshots(jdbcTemplate, productRepository, path, Duration.ZERO);
+        snapshots.start();
+
+        snapshots.shutdown();
+
+        List<Product> read = new ArrayList<>();
+        new ProductSnapshotFile(path).read(read::add);
+        Assertions.assertEquals(2, read.size(), "both products are in the snapshot");
+        Assertions.assertEquals("Product 2", read.get(1).getName());
+    }
+}
@@ -0,0 +1,110 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.model.Product;
+import com.TDD.repository.ProductRepository;
+import com.TDD.repository.ProductSnapshots;
+import com.TDD.repository.ProductWriteAheadLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.mockito.Mockito.mock;
+
+public class ProductWriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // an empty table, the way hibernate creates it
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:writeaheadlog;DB_CLOSE_DELAY=-1");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE Product (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,"
+                + " name VARCHAR(255), quantity INT NOT NULL, version INT NOT NULL)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("DROP TABLE Product");
+    }
+
+    private ProductWriteAheadLog writeAheadLog(Duration fsyncInterval) throws IOException {
+        // no snapshot is ever written, so the whole log is replayed
+        ProductSnapshots snapshots = new ProductSnapshots(jdbcTemplate, mock(ProductRepository.class),
+                directory.resolve("products.snapshot"), Duration.ZERO);
+        ProductWriteAheadLog writeAheadLog = new ProductWriteAheadLog(jdbcTemplate, new SimpleMeterRegistry(), directory,
+                DataSize.ofKilobytes(64), fsyncInterval, true, snapshots);
+        writeAheadLog.start();
+        return writeAheadLog;
+    }
+
+    @Test
+    @DisplayName("start - the logged writes are applied to the empty table")
+    void testReplay() throws IOException {
+        ProductWriteAheadLog writeAheadLog = writeAheadLog(Duration.ofMillis(1));
+        writeAheadLog.put(new Product(1, "Product 1", 2, 1));
+        writeAheadLog.put(new Product(2, "Product 2", 3, 1));
+        writeAheadLog.put(new Product(1, "This is product 1", 100, 2));
+        writeAheadLog.put(new Product(7, "Product 7", 4, 1));
+        writeAheadLog.delete(7);
+        writeAheadLog.awaitDurable();
+        writeAheadLog.shutdown();
+
+        writeAheadLog(Duration.ofMillis(1)).shutdown();
+
+        List<String> names = jdbcTemplate.queryForList("SELECT name FROM Product ORDER BY id", String.class);
+        Assertions.assertEquals(List.of("This is product 1", "Product 2"), names, "the last write of each product");
+        jdbcTemplate.update("INSERT INTO Product (name, quantity, version) VALUES ('New', 1, 1)");
+        Assertions.assertEquals(8, jdbcTemplate.queryForObject("SELECT id FROM Product WHERE name = 'New'", Long.class),
+                "new ids continue after the highest logged one");
+    }
+
+    @Test
+    @DisplayName("awaitDurable - concurrent writers share fsyncs without a background sync")
+    void testGroupCommit() throws Exception {
+        ProductWriteAheadLog writeAheadLog = writeAheadLog(Duration.ZERO);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 1; i <= 200; i++) {
+                long id = i;
+                writes.add(executor.submit(() -> {
+                    writeAheadLog.locked(List.of(id), () -> {
+                        writeAheadLog.put(new Product(id, "Product " + id, 1, 1));
+                        return null;
+                    });
+                    writeAheadLog.awaitDurable();
+                }));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        writeAheadLog.shutdown();
+
+        writeAheadLog(Duration.ZERO).shutdown();
+        Assertions.assertEquals(200, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Product", Long.class), "every write was logged");
+    }
+}
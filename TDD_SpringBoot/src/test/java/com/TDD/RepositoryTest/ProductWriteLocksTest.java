@@ -0,0 +1,73 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.repository.ProductWriteLocks;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProductWriteLocksTest {
+
+    private final ProductWriteLocks writeLocks = new ProductWriteLocks();
+
+    @Test
+    @DisplayName("locked - writes to the same product never overlap")
+    void testSameProductSerialized() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> writes = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                // ids 1 and 65 share a lock, a write to both takes it once
+                List<Long> ids = i % 2 == 0 ? List.of(1L) : List.of(1L, 65L);
+                writes.add(executor.submit(() -> writeLocks.locked(ids, () -> {
+                    if (running.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    Thread.yield();
+                    running.decrementAndGet();
+                    return null;
+                })));
+            }
+            for (Future<?> write : writes) {
+                write.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(0, overlaps.get(), "one write to product 1 at a time");
+    }
+
+    @Test
+    @DisplayName("locked - a write to another product does not wait")
+    void testOtherProductNotBlocked() throws Exception {
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread holder = new Thread(() -> writeLocks.locked(List.of(1L), () -> {
+            holding.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }));
+        holder.start();
+        try {
+            Assertions.assertTrue(holding.await(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("done", writeLocks.locked(List.of(2L), () -> "done"), "product 2 has its own lock");
+        } finally {
+            release.countDown();
+            holder.join();
+        }
+    }
+}
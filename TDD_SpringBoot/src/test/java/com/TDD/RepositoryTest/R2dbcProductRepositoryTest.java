@@ -0,0 +1,97 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.model.Product;
+import com.TDD.model.UpdateResult;
+import com.TDD.repository.R2dbcProductRepository;
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.test.StepVerifier;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+public class R2dbcProductRepositoryTest {
+
+    private R2dbcProductRepository productRepository;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        // create the products from products.yml in a database of its own
+        try (Connection con = DriverManager.getConnection("jdbc:h2:mem:r2dbc;DB_CLOSE_DELAY=-1", "sa", "");
+             Statement statement = con.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS Product");
+            statement.execute("CREATE TABLE Product (id BIGINT AUTO_INCREMENT PRIMARY KEY, name VARCHAR(255), quantity INT, version INT)");
+            statement.execute("INSERT INTO Product (name, quantity, version) VALUES ('Product 1', 2, 1), ('Product 2', 3, 2)");
+        }
+        productRepository = new R2dbcProductRepository(new H2ConnectionFactory(H2ConnectionConfiguration.builder()
+                .url("mem:r2dbc;DB_CLOSE_DELAY=-1")
+                .username("sa")
+                .password("")
+                .build()));
+    }
+
+    @Test
+    void testFindByIdSuccess() {
+        StepVerifier.create(productRepository.findById(2))
+                .expectNextMatches(p -> p.getId() == 2 && "Product 2".equals(p.getName()) && p.getVersion() == 2)
+                .verifyComplete();
+    }
+
+    @Test
+    void testFindByIdNotFound() {
+        // no product is emitted for an id that does not exist
+        StepVerifier.create(productRepository.findById(3))
+                .verifyComplete();
+    }
+
+    @Test
+    void testStatementsRunOffTheCallingThread() {
+        // h2 blocks the thread that runs the statement, which must not be an event loop thread
+        StepVerifier.create(productRepository.findById(1).map(p -> Thread.currentThread().getName()))
+                .expectNextMatches(thread -> thread.startsWith("boundedElastic"))
+                .verifyComplete();
+    }
+
+    @Test
+    void testFindAllWithBackpressure() {
+        // request the products one at a time
+        StepVerifier.create(productRepository.findAll(), 1)
+                .expectNextMatches(p -> p.getId() == 1)
+                .thenRequest(1)
+                .expectNextMatches(p -> p.getId() == 2)
+                .verifyComplete();
+    }
+
+    @Test
+    void testSaveAndUpdateIfVersion() {
+        // the saved product gets a generated id
+        StepVerifier.create(productRepository.save(new Product("Product 5", 5, 1)))
+                .expectNextMatches(p -> p.getId() == 3)
+                .verifyComplete();
+
+        // version 1 matches, version 5 does not
+        StepVerifier.create(productRepository.updateIfVersion(new Product(3, "This is product 5", 50, 0), 1))
+                .expectNext(UpdateResult.UPDATED)
+                .verifyComplete();
+        StepVerifier.create(productRepository.updateIfVersion(new Product(3, "This is product 5", 50, 0), 5))
+                .expectNext(UpdateResult.CONFLICT)
+                .verifyComplete();
+        StepVerifier.create(productRepository.updateIfVersion(new Product(9, "Product 9", 50, 0), 1))
+                .expectNext(UpdateResult.NOT_FOUND)
+                .verifyComplete();
+    }
+
+    @Test
+    void testDelete() {
+        StepVerifier.create(productRepository.delete(1))
+                .expectNext(true)
+                .verifyComplete();
+        StepVerifier.create(productRepository.delete(1))
+                .expectNext(false)
+                .verifyComplete();
+    }
+}
@@ -0,0 +1,49 @@
+package com.TDD.RepositoryTest;
+
+import com.TDD.repository.SlowStatementLog;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+
+public class SlowStatementLogTest {
+
+    private static DataSource database() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:slowstatements;DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+
+    @Test
+    @DisplayName("statements over the threshold are kept with their sql, newest first")
+    void testRecordsSlowStatements() {
+        // every statement takes longer than a nanosecond
+        SlowStatementLog slowStatementLog = new SlowStatementLog(Duration.ofNanos(1), 2);
+        DataSource dataSource = (DataSource) slowStatementLog.postProcessAfterInitialization(database(), "dataSource");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS Item (id BIGINT)");
+        jdbcTemplate.update("INSERT INTO Item (id) VALUES (?)", 1);
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM Item WHERE id = ?", Long.class, 1);
+
+        List<SlowStatementLog.SlowStatement> recent = slowStatementLog.recent();
+        Assertions.assertEquals(3, slowStatementLog.slowCount(), "three statements ran");
+        Assertions.assertEquals(2, recent.size(), "only the history size is kept");
+        Assertions.assertEquals("SELECT COUNT(*) FROM Item WHERE id = ?", recent.get(0).getSql(), "newest first");
+        Assertions.assertEquals("INSERT INTO Item (id) VALUES (?)", recent.get(1).getSql());
+    }
+
+    @Test
+    @DisplayName("a threshold of 0 leaves the data source as it is")
+    void testDisabled() {
+        SlowStatementLog slowStatementLog = new SlowStatementLog(Duration.ZERO, 50);
+        DataSource dataSource = database();
+
+        Assertions.assertSame(dataSource, slowStatementLog.postProcessAfterInitialization(dataSource, "dataSource"));
+    }
+}
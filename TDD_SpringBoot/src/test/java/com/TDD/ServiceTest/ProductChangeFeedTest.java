@@ -0,0 +1,122 @@
+package com.TDD.ServiceTest;
+
+import com.TDD.model.Product;
+import com.TDD.model.ProductChange;
+import com.TDD.service.ProductChangeFeed;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class ProductChangeFeedTest {
+
+    private ProductChangeFeed changeFeed;
+
+    @BeforeEach
+    void setUp() {
+        // a small buffer so the tests can run past it
+        changeFeed = new ProductChangeFeed(4, Duration.ofHours(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        changeFeed.shutdown();
+    }
+
+    @Test
+    @DisplayName("since - the changes after the sequence, oldest first")
+    void testSince() {
+        long start = changeFeed.latestSequence();
+        Product product = new Product(1, "Product Name", 10, 1);
+        long created = changeFeed.publish(ProductChange.Type.CREATED, 1, product);
+        // the feed keeps a copy, later changes to the product do not show in it
+        product.setName("Changed");
+        long deleted = changeFeed.publish(ProductChange.Type.DELETED, 1, null);
+
+        List<ProductChange> changes = changeFeed.since(start, 100).get();
+
+        Assertions.assertEquals(2, changes.size(), "two changes");
+        Assertions.assertEquals(created, changes.get(0).getSequence());
+        Assertions.assertEquals(ProductChange.Type.CREATED, changes.get(0).getType());
+        Assertions.assertEquals("Product Name", changes.get(0).getProduct().getName());
+        Assertions.assertEquals(deleted, changes.get(1).getSequence());
+        Assertions.assertNull(changes.get(1).getProduct(), "a deleted product has no body");
+        Assertions.assertEquals(deleted, changeFeed.latestSequence());
+        Assertions.assertEquals(List.of(), changeFeed.since(deleted, 100).get(), "nothing after the latest");
+        Assertions.assertEquals(1, changeFeed.since(start, 1).get().size(), "limit");
+    }
+
+    @Test
+    @DisplayName("since - empty once the changes after the sequence have left the buffer")
+    void testSinceGone() {
+        long start = changeFeed.latestSequence();
+        for (int i = 0; i < 5; i++) {
+            changeFeed.publish(ProductChange.Type.UPDATED, i, null);
+        }
+
+        Assertions.assertEquals(Optional.empty(), changeFeed.since(start, 100), "first change was overwritten");
+        Assertions.assertEquals(4, changeFeed.since(start + 1, 100).get().size(), "the last four are kept");
+        // sequences from before a restart are older than anything this feed handed out
+        Assertions.assertEquals(Optional.empty(), changeFeed.since(0, 100), "unknown sequence");
+        Assertions.assertEquals(Optional.empty(), changeFeed.since(changeFeed.latestSequence() + 1, 100), "future sequence");
+    }
+
+    @Test
+    @DisplayName("subscribe - the missed changes then every new one, a gap ends the subscription")
+    void testSubscribe() throws Exception {
+        long start = changeFeed.latestSequence();
+        long created = changeFeed.publish(ProductChange.Type.CREATED, 1, new Product(1, "Product Name", 10, 1));
+        BlockingQueue<Long> received = new LinkedBlockingQueue<>();
+        BlockingQueue<Long> gaps = new LinkedBlockingQueue<>();
+        ProductChangeFeed.Subscription subscription = changeFeed.subscribe(start, new ProductChangeFeed.ChangeSink() {
+            @Override
+            public void send(ProductChange change) {
+                received.add(change.getSequence());
+            }
+
+            @Override
+            public void gap(long latestSequence) {
+                gaps.add(latestSequence);
+            }
+
+            @Override
+            public void keepAlive() {
+            }
+        });
+
+        Assertions.assertEquals(created, received.poll(5, TimeUnit.SECONDS), "missed change is sent first");
+        long updated = changeFeed.publish(ProductChange.Type.UPDATED, 1, new Product(1, "Product Name", 9, 2));
+        Assertions.assertEquals(updated, received.poll(5, TimeUnit.SECONDS), "new change is sent");
+
+        subscription.cancel();
+        changeFeed.publish(ProductChange.Type.DELETED, 1, null);
+        Assertions.assertNull(received.poll(200, TimeUnit.MILLISECONDS), "nothing after cancel");
+
+        // a subscriber that starts too far behind is told to load everything again
+        changeFeed.subscribe(0, new ProductChangeFeed.ChangeSink() {
+            @Override
+            public void send(ProductChange change) {
+                received.add(change.getSequence());
+            }
+
+            @Override
+            public void gap(long latestSequence) {
+                gaps.add(latestSequence);
+            }
+
+            @Override
+            public void keepAlive() {
+            }
+        });
+        Assertions.assertEquals(changeFeed.latestSequence(), gaps.poll(5, TimeUnit.SECONDS), "gap with the latest sequence");
+        Assertions.assertTrue(received.isEmpty(), "no changes sent after a gap");
+    }
+}
@@ -0,0 +1,138 @@
+package com.TDD.ServiceTest;
+
+import com.TDD.model.ImportReport;
+import com.TDD.model.Product;
+import com.TDD.service.ProductColumnarFormat;
+import com.TDD.service.ProductExporter;
+import com.TDD.service.ProductImporter;
+import com.TDD.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ProductExporterTest {
+
+    private final List<Product> products = Arrays.asList(
+            new Product(1, "Product 1", 10, 1),
+            new Product(2, null, 0, 2),
+            new Product(3, "Product \"3\", the best", 5, 1),
+            new Product(7, "Produkt grün", 3, 4),
+            new Product(9, "Product 9", 1, 1));
+
+    private ProductService productService;
+    private ProductExporter exporter;
+
+    @BeforeEach
+    void setUp() {
+        // the mock hands out the products one at a time like the database cursor, and a row group is two rows
+        productService = mock(ProductService.class);
+        doAnswer(invocation -> {
+            Consumer<Product> consumer = invocation.getArgument(0);
+            products.forEach(consumer);
+            return null;
+        }).when(productService).streamAll(any());
+        exporter = new ProductExporter(productService, new ObjectMapper(), new SimpleMeterRegistry(), 2);
+    }
+
+    private String export(ProductExporter.Format format) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Assertions.assertEquals(5, exporter.export(output, format), "every product is written");
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    @DisplayName("export - ndjson has one product object per line")
+    void testNdjson() throws IOException {
+        String[] lines = export(ProductExporter.Format.NDJSON).split("\n");
+
+        Assertions.assertEquals(5, lines.length);
+        ObjectMapper objectMapper = new ObjectMapper();
+        for (int i = 0; i < lines.length; i++) {
+            Product product = objectMapper.readValue(lines[i], Product.class);
+            Assertions.assertEquals(products.get(i).getId(), product.getId());
+            Assertions.assertEquals(products.get(i).getName(), product.getName());
+        }
+    }
+
+    @Test
+    @DisplayName("export - csv quotes the names that need it and reads back with the import")
+    void testCsv() throws IOException {
+        String csv = export(ProductExporter.Format.CSV);
+
+        Assertions.assertTrue(csv.startsWith("id,name,quantity,version\n1,Product 1,10,1\n2,,0,2\n"
+                + "3,\"Product \"\"3\"\", the best\",5,1\n"), csv);
+
+        // the import takes the columns it knows, the product without a name is rejected
+        ProductService importService = mock(ProductService.class);
+        List<Product> imported = new ArrayList<>();
+        doAnswer(invocation -> {
+            imported.addAll(invocation.getArgument(0));
+            return List.of();
+        }).when(importService).saveAll(any());
+        ProductImporter importer = new ProductImporter(importService, new ObjectMapper(), new SimpleMeterRegistry(), 100, 1,
+                2, 10, Duration.ofHours(1));
+        try {
+            ImportReport report = importer.importProducts(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)),
+                    ProductImporter.Format.CSV);
+            Assertions.assertEquals(4, report.getImported());
+            Assertions.assertEquals("Product \"3\", the best", imported.get(1).getName());
+            Assertions.assertEquals("Produkt grün", imported.get(2).getName());
+        } finally {
+            importer.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("export - the columnar format reads back in order across row groups")
+    void testColumnar() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        exporter.export(output, ProductExporter.Format.COLUMNAR);
+
+        List<Product> read = new ArrayList<>();
+        long rows = ProductColumnarFormat.read(new ByteArrayInputStream(output.toByteArray()), read::add);
+
+        Assertions.assertEquals(5, rows);
+        for (int i = 0; i < products.size(); i++) {
+            Assertions.assertEquals(products.get(i).getId(), read.get(i).getId());
+            Assertions.assertEquals(products.get(i).getName(), read.get(i).getName());
+            Assertions.assertEquals(products.get(i).getQuantity(), read.get(i).getQuantity());
+            Assertions.assertEquals(products.get(i).getVersion(), read.get(i).getVersion());
+        }
+    }
+
+    @Test
+    @DisplayName("read - a columnar file cut short fails")
+    void testColumnarTruncated() throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        exporter.export(output, ProductExporter.Format.COLUMNAR);
+        byte[] truncated = Arrays.copyOf(output.toByteArray(), output.size() - 12);
+
+        Assertions.assertThrows(IOException.class,
+                () -> ProductColumnarFormat.read(new ByteArrayInputStream(truncated), product -> { }));
+    }
+
+    @Test
+    @DisplayName("Format.of - by name in any case or by file extension")
+    void testFormatOf() {
+        Assertions.assertEquals(ProductExporter.Format.CSV, ProductExporter.Format.of("CSV"));
+        Assertions.assertEquals(ProductExporter.Format.COLUMNAR, ProductExporter.Format.of("pcol"));
+        Assertions.assertEquals(ProductExporter.Format.NDJSON, ProductExporter.Format.of("jsonl"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> ProductExporter.Format.of("xml"));
+    }
+}
@@ -0,0 +1,176 @@
+package com.TDD.ServiceTest;
+
+import com.TDD.model.ImportReport;
+import com.TDD.model.Product;
+import com.TDD.service.ProductImporter;
+import com.TDD.service.ProductService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ProductImporterTest {
+
+    private ProductService productService;
+    private ProductImporter importer;
+    // the products handed to saveAll, in the order they were saved
+    private final List<Product> saved = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        // small chunks and a short queue, so a few lines already go through several chunks and parsers
+        productService = mock(ProductService.class);
+        doAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(0));
+            return List.of();
+        }).when(productService).saveAll(any());
+        importer = importer(3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        importer.shutdown();
+    }
+
+    private ProductImporter importer(int chunkSize) {
+        return new ProductImporter(productService, new ObjectMapper(), new SimpleMeterRegistry(), chunkSize, 2, 2, 3,
+                Duration.ofHours(1));
+    }
+
+    private ImportReport importText(String text, ProductImporter.Format format) throws IOException {
+        return importer.importProducts(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)), format);
+    }
+
+    private List<String> savedNames() {
+        List<String> names = new ArrayList<>();
+        saved.forEach(product -> names.add(product.getName() + ":" + product.getQuantity()));
+        return names;
+    }
+
+    @Test
+    @DisplayName("importProducts - csv columns are found by the header, quoted fields and blank lines are read")
+    void testCsv() throws IOException {
+        ImportReport report = importText("sku,Quantity,name\n"
+                + "a1,5,Product 1\n"
+                + "a2, 7 ,\"Product, with a comma\"\n"
+                + "\n"
+                + "a3,0,\"The \"\"best\"\" product\"\n", ProductImporter.Format.CSV);
+
+        Assertions.assertEquals(List.of("Product 1:5", "Product, with a comma:7", "The \"best\" product:0"), savedNames());
+        Assertions.assertEquals(3, report.getLines(), "blank lines are not counted");
+        Assertions.assertEquals(3, report.getImported());
+        Assertions.assertEquals(0, report.getRejected());
+        Assertions.assertTrue(report.isCompleted());
+    }
+
+    @Test
+    @DisplayName("importProducts - bad lines are reported with their line number and the rest is imported")
+    void testRejectedLines() throws IOException {
+        ImportReport report = importText("name,quantity\n"
+                + "Product 1,1\n"
+                + ",2\n"
+                + "Product 3,three\n"
+                + "Product 4,-4\n"
+                + "Product 5,5\n"
+                + "Product 6,6,6\n"
+                + "\"Product 7,7\n", ProductImporter.Format.CSV);
+
+        Assertions.assertEquals(List.of("Product 1:1", "Product 5:5"), savedNames());
+        Assertions.assertEquals(7, report.getLines());
+        Assertions.assertEquals(2, report.getImported());
+        Assertions.assertEquals(5, report.getRejected(), "every bad line is counted");
+        // max-errors is 3, only the first three are listed
+        Assertions.assertEquals(3, report.getErrors().size());
+        Assertions.assertEquals(3, report.getErrors().get(0).getLine());
+        Assertions.assertEquals("name is missing", report.getErrors().get(0).getMessage());
+        Assertions.assertEquals(4, report.getErrors().get(1).getLine());
+        Assertions.assertEquals("quantity is not a whole number: 'three'", report.getErrors().get(1).getMessage());
+        Assertions.assertEquals("quantity is negative", report.getErrors().get(2).getMessage());
+    }
+
+    @Test
+    @DisplayName("importProducts - a csv header without a quantity column fails before anything is saved")
+    void testCsvHeaderWithoutQuantity() {
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> importText("name,stock\nProduct 1,1\n", ProductImporter.Format.CSV));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> importText("", ProductImporter.Format.CSV));
+        verify(productService, never()).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("importProducts - ndjson lines become new products, ids and versions are ignored")
+    void testNdjson() throws IOException {
+        ImportReport report = importText("{\"name\":\"Product 1\",\"quantity\":1}\n"
+                + "{\"id\":42,\"name\":\"Product 2\",\"quantity\":2,\"version\":9}\n"
+                + "{\"name\":\"Product 3\",\n"
+                + "{\"quantity\":4}\n"
+                + "{\"name\":\"Product 5\"}\n", ProductImporter.Format.NDJSON);
+
+        Assertions.assertEquals(List.of("Product 1:1", "Product 2:2"), savedNames());
+        Assertions.assertEquals(0, saved.get(1).getId(), "the id is given by the database");
+        Assertions.assertEquals(0, saved.get(1).getVersion(), "a new product starts at version 0");
+        Assertions.assertEquals(3, report.getRejected());
+        Assertions.assertEquals(3, report.getErrors().get(0).getLine());
+        Assertions.assertTrue(report.getErrors().get(0).getMessage().startsWith("not a product object"));
+        Assertions.assertEquals("name is missing", report.getErrors().get(1).getMessage());
+        // like an empty csv quantity, a missing one is not taken as 0
+        Assertions.assertEquals(5, report.getErrors().get(2).getLine());
+        Assertions.assertEquals("quantity is missing", report.getErrors().get(2).getMessage());
+    }
+
+    @Test
+    @DisplayName("importProducts - products are saved in file order while chunks are parsed in parallel")
+    void testOrder() throws IOException {
+        StringBuilder csv = new StringBuilder("name,quantity\n");
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            csv.append("Product ").append(i).append(',').append(i % 100).append('\n');
+            expected.add("Product " + i + ":" + i % 100);
+        }
+        importer.shutdown();
+        importer = importer(100);
+
+        ImportReport report = importText(csv.toString(), ProductImporter.Format.CSV);
+
+        Assertions.assertEquals(10_000, report.getImported());
+        Assertions.assertEquals(expected, savedNames());
+        verify(productService, times(100)).saveAll(any());
+    }
+
+    @Test
+    @DisplayName("importProducts - a batch the database refuses stops the import")
+    void testDatabaseFailure() throws IOException {
+        doAnswer(invocation -> {
+            saved.addAll(invocation.getArgument(0));
+            return List.of();
+        }).doThrow(new DataAccessResourceFailureException("database is gone"))
+                .when(productService).saveAll(any());
+        StringBuilder csv = new StringBuilder("name,quantity\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append("Product ").append(i).append(",1\n");
+        }
+
+        ImportReport report = importText(csv.toString(), ProductImporter.Format.CSV);
+
+        Assertions.assertFalse(report.isCompleted());
+        Assertions.assertEquals(3, report.getImported(), "the first chunk is kept");
+        Assertions.assertEquals(3, report.getRejected(), "the refused chunk");
+        Assertions.assertEquals(5, report.getErrors().get(0).getLine(), "the first line of the refused chunk");
+        verify(productService, times(2)).saveAll(any());
+    }
+}
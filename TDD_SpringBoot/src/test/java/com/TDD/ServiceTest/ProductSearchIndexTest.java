@@ -0,0 +1,70 @@
+package com.TDD.ServiceTest;
+
+import com.TDD.model.Product;
+import com.TDD.service.ProductSearchIndex;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ProductSearchIndexTest {
+
+    private ProductSearchIndex searchIndex;
+
+    @BeforeEach
+    void setUp() {
+        // the index is used on its own, without the repository it loads from at startup
+        searchIndex = new ProductSearchIndex();
+        searchIndex.put(new Product(1, "Red Apple Juice", 10, 1));
+        searchIndex.put(new Product(2, "Green Apple", 5, 1));
+        searchIndex.put(new Product(3, "Orange Juice", 7, 1));
+        searchIndex.put(new Product(4, "Pineapple", 2, 1));
+    }
+
+    @Test
+    @DisplayName("search - exact word, shorter names first")
+    void testSearchExact() {
+        Assertions.assertEquals(Arrays.asList(2L, 1L), searchIndex.search("apple", 10), "both apples, the shorter name first");
+    }
+
+    @Test
+    @DisplayName("search - products matching more words rank first")
+    void testSearchRanking() {
+        Assertions.assertEquals(Arrays.asList(1L, 2L, 3L), searchIndex.search("apple juice", 10), "product 1 matches both words");
+        Assertions.assertEquals(Collections.singletonList(1L), searchIndex.search("apple juice", 1), "limit keeps the best");
+    }
+
+    @Test
+    @DisplayName("search - prefix and typos")
+    void testSearchPrefixAndTypo() {
+        Assertions.assertEquals(Arrays.asList(3L), searchIndex.search("ora", 10), "prefix of orange");
+        Assertions.assertEquals(Arrays.asList(3L), searchIndex.search("ornage", 10), "swapped letters in orange");
+        Assertions.assertEquals(Arrays.asList(4L), searchIndex.search("pinneaple", 10), "two typos in a long word");
+        // short words must match exactly
+        Assertions.assertTrue(searchIndex.search("rad", 10).isEmpty(), "rad is not red");
+    }
+
+    @Test
+    @DisplayName("put and remove - index follows the writes")
+    void testPutAndRemove() {
+        searchIndex.put(new Product(2, "Green Pear", 5, 2));
+        Assertions.assertEquals(Arrays.asList(1L), searchIndex.search("apple", 10), "product 2 was renamed");
+        Assertions.assertEquals(Arrays.asList(2L), searchIndex.search("pear", 10), "product 2 has the new name");
+
+        // a plain update can write a lower version, its name still replaces the indexed one
+        searchIndex.put(new Product(2, "Green Plum", 5, 1));
+        Assertions.assertTrue(searchIndex.search("pear", 10).isEmpty(), "the lower version renamed product 2");
+        Assertions.assertEquals(Arrays.asList(2L), searchIndex.search("plum", 10), "product 2 has the newest name");
+
+        searchIndex.remove(2);
+        Assertions.assertTrue(searchIndex.search("pear", 10).isEmpty(), "removed product is not found");
+        Assertions.assertEquals(3, searchIndex.size(), "3 products left");
+
+        // the freed slot is reused
+        searchIndex.put(new Product(5, "Pear Juice", 1, 1));
+        Assertions.assertEquals(Arrays.asList(5L), searchIndex.search("pear", 10), "new product is found");
+    }
+}
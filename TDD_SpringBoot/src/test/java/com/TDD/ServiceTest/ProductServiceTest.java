@@ -1,8 +1,13 @@
 package com.TDD.ServiceTest;
 
+import com.TDD.model.BatchItemResult;
 import com.TDD.model.Product;
 import com.TDD.repository.ProductRepository;
+import com.TDD.service.ProductChangeFeed;
 import com.TDD.service.ProductService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -13,12 +18,16 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(SpringExtension.class)
 @SpringBootTest
@@ -30,6 +39,12 @@ public class ProductServiceTest {
     @MockBean
     ProductRepository productRepository;
 
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    ProductChangeFeed changeFeed;
+
     @Test
     @DisplayName("Test findbyId Success")
     void testFindByIdSuccess() {
@@ -97,6 +112,90 @@ public class ProductServiceTest {
         Assertions.assertSame(returnedProduct.getVersion(), mockProduct.getVersion(), "Products should be the same");
     }
 
+    @Test
+    @DisplayName("Test findAll - metrics recorded")
+    void testFindAllMetrics() {
+        doReturn(Arrays.asList(new Product(1, "Product 1", 10, 1), new Product(2, "Product 2", 5, 1)))
+                .when(productRepository).findAll();
+
+        productService.findAll();
+
+        // the call is timed and the number of returned products is recorded
+        Timer timer = meterRegistry.find("product.service").tag("method", "findAll").timer();
+        Assertions.assertNotNull(timer, "findAll should be timed");
+        Assertions.assertTrue(timer.count() >= 1, "findAll timer should count the call");
+        DistributionSummary size = meterRegistry.find("product.findall.size").summary();
+        Assertions.assertTrue(size.max() >= 2, "findAll size should be recorded");
+    }
+
+    @Test
+    @DisplayName("Test updateAll - per product outcome")
+    void testUpdateAllOutcome() {
+        // product 1 is updated, product 3 does not exist
+        List<Product> products = Arrays.asList(new Product(1, "Product 1", 10, 2), new Product(3, "Product 3", 10, 2));
+        doReturn(new int[] {1, 0}).when(productRepository).updateAll(products);
+
+        List<BatchItemResult> results = productService.updateAll(products);
+
+        Assertions.assertEquals(BatchItemResult.Status.UPDATED, results.get(0).getStatus(), "Product 1 is updated");
+        Assertions.assertEquals(3, results.get(1).getId(), "second result is for product 3");
+        Assertions.assertEquals(BatchItemResult.Status.NOT_FOUND, results.get(1).getStatus(), "Product 3 is not found");
+    }
+
+    @Test
+    @DisplayName("Test search - saved product is found by name")
+    void testSearchAfterSave() {
+        Product savedProduct = new Product(42, "Searchable Widget", 10, 1);
+        doReturn(savedProduct).when(productRepository).save(any());
+        doReturn(Arrays.asList(savedProduct)).when(productRepository).findAllByIds(Arrays.asList(42L));
+
+        productService.save(new Product("Searchable Widget", 10));
+
+        // the index is updated by the save, the product is then read from the repository
+        List<Product> found = productService.search("widgte", 10);
+        Assertions.assertEquals(1, found.size(), "saved product should be found with a typo");
+        Assertions.assertSame(savedProduct, found.get(0), "product comes from the repository");
+    }
+
+    @Test
+    @DisplayName("Test search - products are read in one call and kept in rank order")
+    void testSearchRankOrder() {
+        Product longName = new Product(43, "Searchable Gadget Deluxe", 1, 1);
+        Product shortName = new Product(44, "Searchable Gadget", 1, 1);
+        doReturn(longName).when(productRepository).save(any());
+        productService.save(new Product("Searchable Gadget Deluxe", 1));
+        doReturn(shortName).when(productRepository).save(any());
+        productService.save(new Product("Searchable Gadget", 1));
+        // the repository hands the rows back in id order
+        doReturn(Arrays.asList(longName, shortName)).when(productRepository).findAllByIds(Arrays.asList(44L, 43L));
+
+        List<Product> found = productService.search("gadget", 10);
+
+        Assertions.assertEquals(Arrays.asList(shortName, longName), found, "the shorter name ranks first");
+        verify(productRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    @DisplayName("Test productsVersion - changes on write")
+    void testProductsVersionChanges() {
+        Product mockProduct = new Product(1, "Product Name", 10, 1);
+        doReturn(mockProduct).when(productRepository).save(any());
+
+        String before = productService.productsVersion();
+        // reads do not change the tag
+        productService.findAll();
+        Assertions.assertEquals(before, productService.productsVersion(), "tag should not change on read");
+
+        productService.save(new Product("Product Name", 10));
+        String after = productService.productsVersion();
+        Assertions.assertNotEquals(before, after, "tag should change on save");
+        // the per-start epoch stays, the change feed sequence after it moves on
+        String epoch = before.substring(0, before.indexOf('-') + 1);
+        Assertions.assertTrue(epoch.length() > 1 && after.startsWith(epoch), "tag keeps the epoch of this start");
+        Assertions.assertEquals(Long.toString(changeFeed.latestSequence()), after.substring(epoch.length()),
+                "tag ends with the latest change");
+    }
+
 
 
 
@@ -0,0 +1,109 @@
+package com.TDD.ServiceTest;
+
+import com.TDD.repository.ProductRepository;
+import com.TDD.service.ProductWriteBehind;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class ProductWriteBehindTest {
+
+    private ProductRepository productRepository;
+    private MeterRegistry meterRegistry;
+    private ProductWriteBehind writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        // a long interval and a large buffer, so only the test flushes
+        productRepository = mock(ProductRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        writeBehind = new ProductWriteBehind(productRepository, meterRegistry, Duration.ofHours(1), 1000, true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.shutdown();
+    }
+
+    @Test
+    @DisplayName("flush - concurrent changes are merged into one row per product")
+    @SuppressWarnings("unchecked")
+    void testFlushMergesChanges() throws Exception {
+        doAnswer(invocation -> new int[((Map<Long, Long>) invocation.getArgument(0)).size()])
+                .when(productRepository).adjustQuantityAll(any());
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 10000; i++) {
+                long id = i % 2 + 1;
+                futures.add(executor.submit(() -> writeBehind.add(id, id == 1 ? 1 : -1)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(2, writeBehind.pendingProducts(), "changes wait for 2 products");
+
+        writeBehind.flush();
+
+        ArgumentCaptor<Map<Long, Long>> deltas = ArgumentCaptor.forClass(Map.class);
+        verify(productRepository, times(1)).adjustQuantityAll(deltas.capture());
+        Assertions.assertEquals(Map.of(1L, 5000L, 2L, -5000L), deltas.getValue(), "one summed change per product");
+        Assertions.assertEquals(0, writeBehind.pendingProducts(), "nothing waits after the flush");
+        Assertions.assertEquals(10000, meterRegistry.get("product.writebehind.flush.changes").summary().totalAmount(),
+                "10000 changes written");
+        Assertions.assertEquals(2, meterRegistry.get("product.writebehind.flush.rows").summary().totalAmount(),
+                "in 2 rows");
+    }
+
+    @Test
+    @DisplayName("flush - a failed write is kept for the next flush")
+    void testFlushFailureRetries() {
+        doThrow(new RuntimeException("database down")).doReturn(new int[] {0})
+                .when(productRepository).adjustQuantityAll(any());
+        writeBehind.add(1, 3);
+
+        writeBehind.flush();
+        Assertions.assertEquals(1, writeBehind.pendingProducts(), "the change is put back");
+        writeBehind.add(1, 2);
+
+        writeBehind.flush();
+        verify(productRepository).adjustQuantityAll(Map.of(1L, 5L));
+        // the repository reported the row as not updated
+        Assertions.assertEquals(1, meterRegistry.get("product.writebehind.rejected").counter().count(), "1 rejected row");
+        Assertions.assertEquals(1, meterRegistry.get("product.writebehind.flush.failures").counter().count(), "1 failed flush");
+    }
+
+    @Test
+    @DisplayName("shutdown - waiting changes are written")
+    void testShutdownFlushes() {
+        doReturn(new int[] {1}).when(productRepository).adjustQuantityAll(any());
+        List<Long> flushed = new ArrayList<>();
+        writeBehind.onFlush(flushed::add);
+        writeBehind.add(7, -1);
+
+        writeBehind.shutdown();
+
+        verify(productRepository).adjustQuantityAll(Map.of(7L, -1L));
+        // the listener is told which products were updated
+        Assertions.assertEquals(List.of(7L), flushed, "product 7 was updated");
+    }
+}